@@ -0,0 +1,38 @@
+package dk.noxitech.essentialssql.benchmark;
+
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "HUGE"})
+    public UserDataCorpus.Size size;
+
+    private String plain;
+    private String compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        plain = UserDataCorpus.generate(size, 42L);
+        compressed = UserDataCodec.compress(plain);
+    }
+
+    @Benchmark
+    public String compress() throws IOException {
+        return UserDataCodec.compress(plain);
+    }
+
+    @Benchmark
+    public String decompress() throws IOException {
+        return UserDataCodec.decompress(compressed);
+    }
+}
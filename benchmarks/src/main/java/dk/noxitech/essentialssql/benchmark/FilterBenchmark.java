@@ -0,0 +1,51 @@
+package dk.noxitech.essentialssql.benchmark;
+
+import dk.noxitech.essentialssql.utils.UserDataFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "HUGE"})
+    public UserDataCorpus.Size size;
+
+    private String plain;
+    private UserDataFilter keepAll;
+    private UserDataFilter dropMailAndCooldowns;
+
+    @Setup
+    public void setup() {
+        plain = UserDataCorpus.generate(size, 42L);
+
+        Map<String, Boolean> all = new LinkedHashMap<>();
+        for (String key : new String[] {"homes", "money", "mail", "kits", "cooldowns", "warps", "jail", "mutes",
+            "social-spy", "god-mode", "fly", "nicknames", "ignore-list", "teleport-requests"}) {
+            all.put(key, true);
+        }
+        keepAll = new UserDataFilter(Map.copyOf(all));
+
+        Map<String, Boolean> reduced = new LinkedHashMap<>(all);
+        reduced.put("mail", false);
+        reduced.put("cooldowns", false);
+        dropMailAndCooldowns = new UserDataFilter(Map.copyOf(reduced));
+    }
+
+    @Benchmark
+    public String filterKeepAll() {
+        return keepAll.apply(plain);
+    }
+
+    @Benchmark
+    public String filterDropMailAndCooldowns() {
+        return dropMailAndCooldowns.apply(plain);
+    }
+}
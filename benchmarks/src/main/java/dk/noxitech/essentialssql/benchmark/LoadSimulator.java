@@ -0,0 +1,258 @@
+package dk.noxitech.essentialssql.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.manager.UserDataManager;
+import dk.noxitech.essentialssql.metrics.LatencyHistogram;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.utils.UserDataFormat;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Headless join/quit load harness. Two simulated backend servers, each with
+ * its own pool and userdata folder, share one embedded H2 database running in
+ * MySQL mode and are driven through {@link UserDataManager} exactly as the
+ * listeners drive them on a live server.
+ */
+public final class LoadSimulator {
+
+    private static final String JDBC_URL =
+        "jdbc:h2:mem:essentialssql_sim;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final int players;
+    private final int poolSize;
+    private final int cycles;
+    private final List<UUID> playerIds = new ArrayList<>();
+    private final List<String> playerNames = new ArrayList<>();
+
+    private SimulatedServer serverA;
+    private SimulatedServer serverB;
+
+    private LoadSimulator(int players, int poolSize, int cycles) {
+        this.players = players;
+        this.poolSize = poolSize;
+        this.cycles = cycles;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int players = 500;
+        int poolSize = 10;
+        int cycles = 3;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(args[i + 1]);
+                case "--pool-size" -> poolSize = Integer.parseInt(args[i + 1]);
+                case "--cycles" -> cycles = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        LoadSimulator simulator = new LoadSimulator(players, poolSize, cycles);
+        try {
+            simulator.setup();
+            simulator.run();
+        } finally {
+            simulator.shutdown();
+        }
+    }
+
+    private void setup() throws IOException {
+        Path root = Files.createTempDirectory("essentialssql-sim");
+        serverA = new SimulatedServer("server-a", root.resolve("server-a"), poolSize);
+        serverB = new SimulatedServer("server-b", root.resolve("server-b"), poolSize);
+
+        for (int i = 0; i < players; i++) {
+            UUID uuid = UUID.nameUUIDFromBytes(("sim-player-" + i).getBytes());
+            playerIds.add(uuid);
+            playerNames.add("Sim" + i);
+
+            UserDataCorpus.Size size = UserDataCorpus.Size.values()[i % 3];
+            Files.writeString(serverA.userdataFolder.resolve(UserDataFormat.fileNameFor(uuid)),
+                UserDataCorpus.generate(size, i));
+        }
+
+        System.out.printf(Locale.ROOT, "Seeding %d players through server-a...%n", players);
+        runPhase("seed", serverA, index -> serverA.userDataManager.savePlayerData(playerIds.get(index), playerNames.get(index)));
+    }
+
+    private void run() {
+        runPhase("join storm", serverB,
+            index -> serverB.userDataManager.loadPlayerData(playerIds.get(index), playerNames.get(index)));
+
+        for (int cycle = 1; cycle <= cycles; cycle++) {
+            runPhase("autosync cycle " + cycle, serverB,
+                index -> serverB.userDataManager.savePlayerData(playerIds.get(index), playerNames.get(index)));
+        }
+
+        runPhase("proxy switch b->a", serverA, index -> {
+            UUID uuid = playerIds.get(index);
+            String name = playerNames.get(index);
+            return serverB.userDataManager.savePlayerData(uuid, name)
+                .thenCompose(saved -> serverA.userDataManager.loadPlayerData(uuid, name));
+        });
+
+        System.out.println();
+        System.out.println("Per-phase breakdown (server-a / server-b):");
+        printBreakdown(serverA);
+        printBreakdown(serverB);
+    }
+
+    private void runPhase(String name, SimulatedServer observed, Function<Integer, CompletableFuture<Boolean>> operation) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger failures = new AtomicInteger();
+        PoolSampler sampler = new PoolSampler(observed.dataSource.getHikariPoolMXBean());
+
+        long started = System.nanoTime();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            long opStart = System.nanoTime();
+            futures.add(operation.apply(i).whenComplete((ok, throwable) -> {
+                latencies.record((System.nanoTime() - opStart) / 1000L);
+                if (throwable != null || !Boolean.TRUE.equals(ok)) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(t -> null).join();
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        sampler.stop();
+
+        System.out.printf(Locale.ROOT,
+            "%-18s %6d ops in %7.2fs  %9.1f ops/s  p50 %8.2fms  p99 %8.2fms  p999 %8.2fms  max %8.2fms  failed %d%n",
+            name, players, seconds, players / seconds,
+            latencies.getPercentileMicros(0.5) / 1000.0,
+            latencies.getPercentileMicros(0.99) / 1000.0,
+            latencies.getPercentileMicros(0.999) / 1000.0,
+            latencies.getMaxMicros() / 1000.0,
+            failures.get());
+        System.out.printf(Locale.ROOT,
+            "%-18s pool %s: max active %d/%d, max waiting threads %d, saturated %.0f%% of samples%n",
+            "", observed.name, sampler.maxActive, poolSize, sampler.maxWaiting, sampler.saturatedPercent());
+    }
+
+    private void printBreakdown(SimulatedServer server) {
+        for (String line : server.metrics.formatStatusLines()) {
+            System.out.println("  " + server.name + " " + line.replaceAll("&[0-9a-fk-or]", ""));
+        }
+    }
+
+    private void shutdown() {
+        if (serverA != null) {
+            serverA.close();
+        }
+        if (serverB != null) {
+            serverB.close();
+        }
+    }
+
+    private static final class SimulatedServer {
+        private final String name;
+        private final Path userdataFolder;
+        private final HikariDataSource dataSource;
+        private final MetricsRegistry metrics;
+        private final UserDataManager userDataManager;
+
+        private SimulatedServer(String name, Path serverRoot, int poolSize) throws IOException {
+            this.name = name;
+
+            Path dataFolder = serverRoot.resolve("plugins").resolve("EssentialsSQL");
+            Files.createDirectories(dataFolder);
+            this.userdataFolder = serverRoot.resolve("plugins").resolve("Essentials").resolve("userdata");
+            Files.createDirectories(userdataFolder);
+
+            YamlConfiguration config = new YamlConfiguration();
+            config.set("settings.delete-local-after-save", false);
+            config.set("data.compress-data", true);
+            config.set("debug.performance-monitoring", true);
+
+            Logger logger = Logger.getLogger("EssentialsSQL-" + name);
+            logger.setLevel(Level.WARNING);
+
+            this.metrics = new MetricsRegistry(true);
+
+            Main plugin = mock(Main.class);
+            when(plugin.getConfig()).thenReturn(config);
+            when(plugin.getSettings()).thenReturn(PluginSettings.fromConfig(config));
+            when(plugin.getMetricsRegistry()).thenReturn(metrics);
+            when(plugin.getLogger()).thenReturn(logger);
+            when(plugin.getDataFolder()).thenReturn(dataFolder.toFile());
+
+            HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setPoolName("EssentialsSQL-" + name);
+            hikariConfig.setJdbcUrl(JDBC_URL);
+            hikariConfig.setUsername("sa");
+            hikariConfig.setMaximumPoolSize(poolSize);
+            hikariConfig.setMinimumIdle(poolSize);
+            this.dataSource = new HikariDataSource(hikariConfig);
+
+            DatabaseManager databaseManager = new DatabaseManager(plugin);
+            if (!databaseManager.initialize(dataSource)) {
+                throw new IllegalStateException("Failed to initialize embedded database for " + name);
+            }
+            when(plugin.getDatabaseManager()).thenReturn(databaseManager);
+
+            this.userDataManager = new UserDataManager(plugin, databaseManager);
+        }
+
+        private void close() {
+            dataSource.close();
+        }
+    }
+
+    private static final class PoolSampler {
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        private final HikariPoolMXBean pool;
+        private volatile int maxActive;
+        private volatile int maxWaiting;
+        private volatile int samples;
+        private volatile int saturatedSamples;
+
+        private PoolSampler(HikariPoolMXBean pool) {
+            this.pool = pool;
+            executor.scheduleAtFixedRate(this::sample, 0, 5, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            int active = pool.getActiveConnections();
+            int waiting = pool.getThreadsAwaitingConnection();
+            maxActive = Math.max(maxActive, active);
+            maxWaiting = Math.max(maxWaiting, waiting);
+            samples++;
+            if (waiting > 0) {
+                saturatedSamples++;
+            }
+        }
+
+        private void stop() {
+            executor.shutdownNow();
+        }
+
+        private double saturatedPercent() {
+            return samples == 0 ? 0 : saturatedSamples * 100.0 / samples;
+        }
+    }
+}
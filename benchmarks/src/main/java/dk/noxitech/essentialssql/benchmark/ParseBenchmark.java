@@ -0,0 +1,46 @@
+package dk.noxitech.essentialssql.benchmark;
+
+import dk.noxitech.essentialssql.utils.UserDataFormat;
+import dk.noxitech.essentialssql.utils.UserDataSummary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "HUGE"})
+    public UserDataCorpus.Size size;
+
+    private String plain;
+    private UUID uuid;
+    private String fileName;
+
+    @Setup
+    public void setup() {
+        plain = UserDataCorpus.generate(size, 42L);
+        uuid = new UUID(0x1234_5678_9abc_def0L, 0x0fed_cba9_8765_4321L);
+        fileName = UserDataFormat.fileNameFor(uuid);
+    }
+
+    @Benchmark
+    public UserDataSummary extractSummary() {
+        return UserDataSummary.extract(plain);
+    }
+
+    @Benchmark
+    public String uuidToFileName() {
+        return UserDataFormat.fileNameFor(uuid);
+    }
+
+    @Benchmark
+    public UUID fileNameToUuid() {
+        return UserDataFormat.uuidFromFileName(fileName);
+    }
+}
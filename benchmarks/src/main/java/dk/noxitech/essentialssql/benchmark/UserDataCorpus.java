@@ -0,0 +1,111 @@
+package dk.noxitech.essentialssql.benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates deterministic Essentials userdata files shaped like real ones,
+ * from a fresh one-time visitor up to a veteran with a huge mailbox.
+ */
+public final class UserDataCorpus {
+
+    public enum Size {
+        SMALL(0, 0, 0),
+        MEDIUM(5, 10, 3),
+        LARGE(40, 250, 10),
+        HUGE(150, 3000, 25);
+
+        private final int homes;
+        private final int mails;
+        private final int kits;
+
+        Size(int homes, int mails, int kits) {
+            this.homes = homes;
+            this.mails = mails;
+            this.kits = kits;
+        }
+    }
+
+    private static final String[] WORLDS = {"world", "world_nether", "world_the_end", "spawn", "resource"};
+
+    private UserDataCorpus() {
+    }
+
+    public static String generate(Size size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder yaml = new StringBuilder(256 + size.mails * 160 + size.homes * 140);
+        String name = "Player" + Math.abs(random.nextInt(1_000_000));
+
+        yaml.append("money: '").append(String.format(Locale.ROOT, "%.2f", random.nextDouble() * 100_000)).append("'\n");
+        yaml.append("lastAccountName: ").append(name).append('\n');
+        yaml.append("ip-address: 10.").append(random.nextInt(256)).append('.').append(random.nextInt(256)).append('.')
+            .append(random.nextInt(256)).append('\n');
+        yaml.append("afk: false\n");
+        yaml.append("godmode: false\n");
+        yaml.append("socialspy: false\n");
+        yaml.append("jailed: false\n");
+        yaml.append("muted: false\n");
+        yaml.append("teleportenabled: true\n");
+        if (size != Size.SMALL) {
+            yaml.append("nickname: '&6").append(name).append("'\n");
+        }
+
+        long now = 1_700_000_000_000L + random.nextInt(1_000_000_000);
+        yaml.append("timestamps:\n");
+        yaml.append("  login: ").append(now).append('\n');
+        yaml.append("  logout: ").append(now + random.nextInt(7_200_000)).append('\n');
+        yaml.append("  lastteleport: ").append(now - random.nextInt(100_000)).append('\n');
+        if (size.kits > 0) {
+            yaml.append("  kits:\n");
+            for (int i = 0; i < size.kits; i++) {
+                yaml.append("    kit").append(i).append(": ").append(now - random.nextInt(86_400_000)).append('\n');
+            }
+            yaml.append("  command-cooldowns:\n");
+            for (int i = 0; i < size.kits; i++) {
+                yaml.append("  - pattern: ^").append("cmd").append(i).append("\n");
+                yaml.append("    expiry: ").append(now + random.nextInt(86_400_000)).append('\n');
+            }
+        }
+
+        appendLocation(yaml, "logoutlocation", "", random);
+
+        if (size.homes > 0) {
+            yaml.append("homes:\n");
+            for (int i = 0; i < size.homes; i++) {
+                appendLocation(yaml, "home" + i, "  ", random);
+            }
+        }
+
+        if (size.mails > 0) {
+            yaml.append("mail:\n");
+            for (int i = 0; i < size.mails; i++) {
+                yaml.append("- sender-name: Player").append(random.nextInt(10_000)).append('\n');
+                yaml.append("  sender-uuid: ").append(new UUID(random.nextLong(), random.nextLong())).append('\n');
+                yaml.append("  message: Hey, meet me at the shop near spawn tonight #").append(i).append('\n');
+                yaml.append("  read: ").append(random.nextBoolean()).append('\n');
+                yaml.append("  time-sent: ").append(now - random.nextInt(1_000_000_000)).append('\n');
+            }
+        }
+
+        if (size != Size.SMALL) {
+            yaml.append("ignore:\n");
+            for (int i = 0; i < size.homes / 5 + 1; i++) {
+                yaml.append("- ").append(new UUID(random.nextLong(), random.nextLong())).append('\n');
+            }
+        }
+
+        return yaml.toString();
+    }
+
+    private static void appendLocation(StringBuilder yaml, String key, String indent, Random random) {
+        yaml.append(indent).append(key).append(":\n");
+        yaml.append(indent).append("  world: ").append(new UUID(random.nextLong(), random.nextLong())).append('\n');
+        yaml.append(indent).append("  world-name: ").append(WORLDS[random.nextInt(WORLDS.length)]).append('\n');
+        yaml.append(indent).append("  x: ").append(random.nextDouble() * 20_000 - 10_000).append('\n');
+        yaml.append(indent).append("  y: ").append(random.nextInt(320) - 64).append('\n');
+        yaml.append(indent).append("  z: ").append(random.nextDouble() * 20_000 - 10_000).append('\n');
+        yaml.append(indent).append("  yaw: ").append(random.nextFloat() * 360).append('\n');
+        yaml.append(indent).append("  pitch: ").append(random.nextFloat() * 180 - 90).append('\n');
+    }
+}
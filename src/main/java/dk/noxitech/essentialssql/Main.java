@@ -1,12 +1,24 @@
 package dk.noxitech.essentialssql;
 
 import dk.noxitech.essentialssql.commands.EssentialsSQLCommand;
+import dk.noxitech.essentialssql.config.PluginSettings;
 import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.integration.CacheInvalidationChannel;
+import dk.noxitech.essentialssql.integration.EssentialsBridge;
+import dk.noxitech.essentialssql.integration.EssentialsSQLExpansion;
+import dk.noxitech.essentialssql.integration.EssentialsSQLServiceProvider;
 import dk.noxitech.essentialssql.integration.ShopIntegrationManager;
 import dk.noxitech.essentialssql.listeners.EconomyListener;
 import dk.noxitech.essentialssql.listeners.PlayerDataListener;
+import dk.noxitech.essentialssql.manager.ArchiveManager;
+import dk.noxitech.essentialssql.manager.HistoryManager;
+import dk.noxitech.essentialssql.manager.LeaderboardManager;
+import dk.noxitech.essentialssql.manager.MigrationManager;
 import dk.noxitech.essentialssql.manager.UserDataManager;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.metrics.PrometheusExporter;
 import dk.noxitech.essentialssql.utils.CleanupManager;
+import dk.noxitech.essentialssql.utils.MainThreadQueue;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.ChatColor;
 import org.bukkit.plugin.RegisteredServiceProvider;
@@ -20,13 +32,30 @@ public final class Main extends JavaPlugin {
     private UserDataManager userDataManager;
     private CleanupManager cleanupManager;
     private ShopIntegrationManager shopIntegrationManager;
+    private MetricsRegistry metricsRegistry;
+    private PrometheusExporter prometheusExporter;
+    private EconomyListener economyListener;
+    private MigrationManager migrationManager;
+    private LeaderboardManager leaderboardManager;
+    private HistoryManager historyManager;
+    private ArchiveManager archiveManager;
+    private MainThreadQueue mainThreadQueue;
+    private EssentialsBridge essentialsBridge;
+    private EssentialsSQLServiceProvider serviceProvider;
+    private CacheInvalidationChannel invalidationChannel;
 
     private Economy economy;
 
+    private volatile PluginSettings settings;
+
     @Override
     public void onEnable() {
         printStartupBanner();
         saveDefaultConfig();
+        reloadConfig();
+
+        metricsRegistry = new MetricsRegistry(getSettings().isPerformanceMonitoring());
+        mainThreadQueue = new MainThreadQueue(this);
 
         if (!initializeDatabase()) {
             getLogger().severe("Failed to initialize database! Disabling plugin...");
@@ -53,6 +82,14 @@ public final class Main extends JavaPlugin {
     public void onDisable() {
         getLogger().info("Shutting down EssentialsSQL...");
 
+        if (invalidationChannel != null) {
+            invalidationChannel.shutdown();
+        }
+
+        if (serviceProvider != null) {
+            serviceProvider.unregister();
+        }
+
         if (cleanupManager != null) {
             cleanupManager.shutdown();
         }
@@ -61,6 +98,35 @@ public final class Main extends JavaPlugin {
             shopIntegrationManager.shutdown();
         }
 
+        if (prometheusExporter != null) {
+            prometheusExporter.shutdown();
+        }
+
+        if (economyListener != null) {
+            economyListener.shutdown();
+        }
+
+        // after the shop integration and economy listener, whose final flushes can still queue main thread work
+        if (mainThreadQueue != null) {
+            mainThreadQueue.shutdown();
+        }
+
+        if (migrationManager != null) {
+            migrationManager.shutdown();
+        }
+
+        if (leaderboardManager != null) {
+            leaderboardManager.shutdown();
+        }
+
+        if (archiveManager != null) {
+            archiveManager.shutdown();
+        }
+
+        if (historyManager != null) {
+            historyManager.shutdown();
+        }
+
         if (databaseManager != null) {
             databaseManager.shutdown();
         }
@@ -94,12 +160,29 @@ public final class Main extends JavaPlugin {
         getLogger().info("Initializing plugin components...");
 
         userDataManager = new UserDataManager(this, databaseManager);
+        essentialsBridge = new EssentialsBridge(this);
 
         cleanupManager = new CleanupManager(this, databaseManager, userDataManager);
         cleanupManager.initialize();
 
         shopIntegrationManager = new ShopIntegrationManager(this, databaseManager);
 
+        migrationManager = new MigrationManager(this, databaseManager);
+
+        leaderboardManager = new LeaderboardManager(this, databaseManager);
+
+        historyManager = new HistoryManager(this, databaseManager);
+
+        archiveManager = new ArchiveManager(this, databaseManager);
+
+        serviceProvider = new EssentialsSQLServiceProvider(this, databaseManager);
+
+        invalidationChannel = new CacheInvalidationChannel(this, databaseManager);
+        invalidationChannel.addReceiver(databaseManager::applyRemoteWrite);
+        invalidationChannel.addReceiver((playerUuid, kind) -> serviceProvider.invalidate(playerUuid));
+        invalidationChannel.addReceiver(historyManager::invalidate);
+        invalidationChannel.addReceiver(leaderboardManager::invalidate);
+
         getLogger().info("All components initialized successfully!");
     }
 
@@ -111,13 +194,22 @@ public final class Main extends JavaPlugin {
         getCommand("essentialssql").setTabCompleter(commandExecutor);
 
         getServer().getPluginManager().registerEvents(new PlayerDataListener(this, userDataManager), this);
-        getServer().getPluginManager().registerEvents(new EconomyListener(this, userDataManager), this);
+        if (getServer().getPluginManager().getPlugin("Essentials") != null) {
+            economyListener = new EconomyListener(this, databaseManager);
+            getServer().getPluginManager().registerEvents(economyListener, this);
+            invalidationChannel.addReceiver(economyListener::onRemoteWrite);
+        } else {
+            getLogger().info("Essentials not found - balances will only be cached on join and quit");
+        }
         getServer().getPluginManager().registerEvents(shopIntegrationManager, this);
 
         getLogger().info("Commands and listeners registered!");
     }
 
     private void setupExternalIntegrations() {
+        serviceProvider.register();
+        getLogger().info("EssentialsSQLService registered for other plugins");
+
         if (getServer().getPluginManager().getPlugin("Vault") != null) {
             RegisteredServiceProvider<Economy> rsp = getServer().getServicesManager().getRegistration(Economy.class);
             if (rsp != null) {
@@ -129,16 +221,65 @@ public final class Main extends JavaPlugin {
         } else {
             getLogger().info("Vault not found - balance top may not work properly");
         }
+
+        if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
+            if (getConfig().getBoolean("placeholders.enabled", true)) {
+                new EssentialsSQLExpansion(this, leaderboardManager).register();
+                getLogger().info("PlaceholderAPI expansion registered");
+            }
+        }
     }
 
     private void startBackgroundTasks() {
         getLogger().info("Starting background tasks...");
 
+        mainThreadQueue.start();
+
         userDataManager.startAutoSync();
+        databaseManager.startJournalReplay();
+        databaseManager.startPartitionMaintenance();
+        databaseManager.loadNameIndex().thenAccept(count ->
+            getLogger().info("Indexed " + count + " stored player names for tab completion"));
+
+        if (economyListener != null) {
+            economyListener.start();
+        }
+
+        shopIntegrationManager.start();
+        migrationManager.start();
+        leaderboardManager.start();
+        historyManager.start();
+        archiveManager.start();
+        invalidationChannel.start();
+
+        PluginSettings settings = getSettings();
+        if (settings.isPrometheusEnabled()) {
+            prometheusExporter = new PrometheusExporter(this, metricsRegistry);
+            prometheusExporter.start(settings.getPrometheusBindAddress(), settings.getPrometheusPort());
+        }
 
         getLogger().info("Background tasks started!");
     }
 
+    @Override
+    public void reloadConfig() {
+        super.reloadConfig();
+        settings = PluginSettings.fromConfig(getConfig());
+
+        if (metricsRegistry != null) {
+            metricsRegistry.setEnabled(settings.isPerformanceMonitoring());
+        }
+    }
+
+    public PluginSettings getSettings() {
+        PluginSettings current = settings;
+        if (current == null) {
+            current = PluginSettings.fromConfig(getConfig());
+            settings = current;
+        }
+        return current;
+    }
+
     public String colorize(String message) {
         return ChatColor.translateAlternateColorCodes('&', message);
     }
@@ -147,6 +288,10 @@ public final class Main extends JavaPlugin {
         return economy;
     }
 
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
@@ -163,6 +308,34 @@ public final class Main extends JavaPlugin {
         return shopIntegrationManager;
     }
 
+    public EssentialsBridge getEssentialsBridge() {
+        return essentialsBridge;
+    }
+
+    public MainThreadQueue getMainThreadQueue() {
+        return mainThreadQueue;
+    }
+
+    public LeaderboardManager getLeaderboardManager() {
+        return leaderboardManager;
+    }
+
+    public MigrationManager getMigrationManager() {
+        return migrationManager;
+    }
+
+    public HistoryManager getHistoryManager() {
+        return historyManager;
+    }
+
+    public ArchiveManager getArchiveManager() {
+        return archiveManager;
+    }
+
+    public EssentialsSQLServiceProvider getServiceProvider() {
+        return serviceProvider;
+    }
+
     public boolean isInitialized() {
         return databaseManager != null && 
                userDataManager != null && 
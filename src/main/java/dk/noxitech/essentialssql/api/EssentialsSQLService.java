@@ -0,0 +1,43 @@
+package dk.noxitech.essentialssql.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read access to stored player data for other plugins, registered in Bukkit's
+ * {@code ServicesManager}:
+ * <pre>
+ * EssentialsSQLService service = Bukkit.getServicesManager().load(EssentialsSQLService.class);
+ * service.getPlayers(uuids).thenAccept(profiles -> ...);
+ * </pre>
+ * Lookups never block the calling thread and share EssentialsSQL's connection pool.
+ * Recently looked up players are answered from memory, and the rest of a batch is
+ * fetched with a single query. Futures complete off the main thread, so hop back to it
+ * before touching the Bukkit API. They complete exceptionally if the database fails.
+ */
+public interface EssentialsSQLService {
+
+    /**
+     * The stored profile of one player, empty if EssentialsSQL has never saved them.
+     */
+    CompletableFuture<Optional<PlayerProfile>> getPlayer(UUID playerUuid);
+
+    /**
+     * Profiles of several players in one round trip. Players that were never saved are left out of the map.
+     */
+    CompletableFuture<Map<UUID, PlayerProfile>> getPlayers(Collection<UUID> playerUuids);
+
+    /**
+     * The UUID stored for a player name, ignoring case. Answered from memory.
+     */
+    Optional<UUID> findUuid(String playerName);
+
+    /**
+     * Up to {@code limit} stored player names starting with {@code prefix}, for tab completion. Answered from memory.
+     */
+    List<String> completeNames(String prefix, int limit);
+}
@@ -0,0 +1,37 @@
+package dk.noxitech.essentialssql.api;
+
+import java.util.OptionalDouble;
+import java.util.UUID;
+
+/**
+ * What {@link EssentialsSQLService} knows about a stored player without loading their userdata.
+ */
+public final class PlayerProfile {
+
+    private final UUID uuid;
+    private final String name;
+    private final Double balance;
+    private final long lastSeen;
+
+    public PlayerProfile(UUID uuid, String name, Double balance, long lastSeen) {
+        this.uuid = uuid;
+        this.name = name;
+        this.balance = balance;
+        this.lastSeen = lastSeen;
+    }
+
+    public UUID getUuid() { return uuid; }
+    public String getName() { return name; }
+
+    /**
+     * The last balance synced from Essentials, empty if none was ever recorded.
+     */
+    public OptionalDouble getBalance() {
+        return balance != null ? OptionalDouble.of(balance) : OptionalDouble.empty();
+    }
+
+    /**
+     * Epoch millis of the player's last logout, or of the last save if Essentials never recorded one.
+     */
+    public long getLastSeen() { return lastSeen; }
+}
@@ -1,22 +1,42 @@
 package dk.noxitech.essentialssql.commands;
 
 import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings;
+import dk.noxitech.essentialssql.database.CircuitBreaker;
 import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.MigrationProgress;
+import dk.noxitech.essentialssql.database.PlayerNameIndex;
+import dk.noxitech.essentialssql.integration.EssentialsBridge;
+import dk.noxitech.essentialssql.integration.ShopIntegrationManager;
+import dk.noxitech.essentialssql.manager.HistoryManager;
+import dk.noxitech.essentialssql.manager.LeaderboardManager;
+import dk.noxitech.essentialssql.manager.MigrationManager;
 import dk.noxitech.essentialssql.manager.UserDataManager;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import dk.noxitech.essentialssql.utils.UserDataSummary;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
+    private static final int MAX_NAME_COMPLETIONS = 50;
+
     private final Main plugin;
     private final UserDataManager userDataManager;
     private final DatabaseManager databaseManager;
@@ -57,6 +77,15 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             case "cleanup":
                 handleCleanup(sender, args);
                 break;
+            case "shopstats":
+                handleShopStats(sender, args);
+                break;
+            case "migrate":
+                handleMigrate(sender, args);
+                break;
+            case "rollback":
+                handleRollback(sender, args);
+                break;
             case "reload":
                 handleReload(sender);
                 break;
@@ -87,7 +116,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
         CompletableFuture<Integer> importFuture = userDataManager.importAllUserData();
 
-        importFuture.whenComplete((count, throwable) -> {
+        importFuture.whenCompleteAsync((count, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cImport failed: " + throwable.getMessage()));
                 return;
@@ -96,7 +125,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             String message = plugin.getConfig().getString("messages.import-success", "&aSuccessfully imported {count} players!")
                 .replace("{count}", String.valueOf(count));
             sender.sendMessage(plugin.colorize(message));
-        });
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleExport(CommandSender sender, String[] args) {
@@ -109,7 +138,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
         CompletableFuture<Integer> exportFuture = userDataManager.exportAllUserData();
 
-        exportFuture.whenComplete((count, throwable) -> {
+        exportFuture.whenCompleteAsync((count, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cExport failed: " + throwable.getMessage()));
                 return;
@@ -118,11 +147,11 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             String message = plugin.getConfig().getString("messages.export-success", "&aSuccessfully exported {count} players!")
                 .replace("{count}", String.valueOf(count));
             sender.sendMessage(plugin.colorize(message));
-        });
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleBalanceTop(CommandSender sender, String[] args) {
-        if (!plugin.getConfig().getBoolean("commands.balance-top.enabled", true)) {
+        if (!plugin.getSettings().isBalanceTopEnabled()) {
             sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cBalance top is disabled in the configuration!"));
             return;
         }
@@ -146,11 +175,17 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             }
         }
 
-        sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aLoading balance top..."));
-
-        CompletableFuture<List<DatabaseManager.BalanceEntry>> balanceFuture = databaseManager.getTopBalances(limit);
+        CompletableFuture<List<DatabaseManager.BalanceEntry>> balanceFuture;
+        LeaderboardManager.Snapshot snapshot = plugin.getLeaderboardManager().getSnapshot();
+        if (snapshot.getCreatedAt() > 0 && limit <= plugin.getConfig().getInt("placeholders.leaderboard-size", 1000)) {
+            List<DatabaseManager.BalanceEntry> entries = snapshot.getEntries();
+            balanceFuture = CompletableFuture.completedFuture(entries.subList(0, Math.min(limit, entries.size())));
+        } else {
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aLoading balance top..."));
+            balanceFuture = databaseManager.getTopBalances(limit);
+        }
 
-        balanceFuture.whenComplete((balances, throwable) -> {
+        balanceFuture.whenCompleteAsync((balances, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to load balance top: " + throwable.getMessage()));
                 return;
@@ -171,7 +206,58 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
                 sender.sendMessage(plugin.colorize(String.format("&6%s. &f%s &7- &a$%s", 
                     position, entry.getName(), balance)));
             }
-        });
+        }, plugin.getMainThreadQueue());
+    }
+
+    private void handleShopStats(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("essentialssql.admin.shopstats")) {
+            sender.sendMessage(plugin.colorize(plugin.getConfig().getString("messages.no-permission", "&cYou don't have permission to use this command!")));
+            return;
+        }
+
+        int hours = 24;
+        if (args.length > 1) {
+            try {
+                hours = Integer.parseInt(args[1]);
+                if (hours < 1 || hours > 24 * 90) {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cHours must be between 1 and 2160!"));
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cInvalid number format!"));
+                return;
+            }
+        }
+
+        String item = args.length > 2 ? args[2].toUpperCase(Locale.ROOT) : null;
+        long currentHour = System.currentTimeMillis() / 3_600_000L * 3_600L;
+        long sinceHour = currentHour - (hours - 1) * 3_600L;
+        int periodHours = hours;
+
+        sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aLoading shop statistics..."));
+
+        databaseManager.getShopStats(sinceHour, item, 10).whenCompleteAsync((stats, throwable) -> {
+            if (throwable != null) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to load shop statistics: " + throwable.getMessage()));
+                return;
+            }
+
+            if (stats.isEmpty()) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cNo shop trades recorded in the last " + periodHours + " hours!"));
+                return;
+            }
+
+            sender.sendMessage(plugin.colorize("&6&l=== &eShop Stats (last " + periodHours + "h) &6&l==="));
+
+            for (DatabaseManager.ShopRollup entry : stats) {
+                String direction = ShopIntegrationManager.TYPE_SALE.equals(entry.getType()) ? "&asold" : "&cbought";
+                sender.sendMessage(plugin.colorize(String.format("&f%s %s &f%d &7in &f%d &7trades for &a$%s",
+                    entry.getItem().toLowerCase(Locale.ROOT).replace('_', ' '), direction, entry.getQuantity(),
+                    entry.getTradeCount(), balanceFormat.format(entry.getTotalPrice()))));
+                sender.sendMessage(plugin.colorize(String.format("  &7unit price &f$%s &7- &f$%s",
+                    balanceFormat.format(entry.getMinUnitPrice()), balanceFormat.format(entry.getMaxUnitPrice()))));
+            }
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleCleanup(CommandSender sender, String[] args) {
@@ -198,7 +284,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
         CompletableFuture<Integer> cleanupFuture = databaseManager.cleanupInactiveUsers(days);
 
-        cleanupFuture.whenComplete((count, throwable) -> {
+        cleanupFuture.whenCompleteAsync((count, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cCleanup failed: " + throwable.getMessage()));
                 return;
@@ -207,7 +293,212 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             String message = plugin.getConfig().getString("messages.cleanup-success", "&aCleanup completed! Removed {count} inactive players.")
                 .replace("{count}", String.valueOf(count));
             sender.sendMessage(plugin.colorize(message));
-        });
+        }, plugin.getMainThreadQueue());
+    }
+
+    private void handleMigrate(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("essentialssql.admin.migrate")) {
+            sender.sendMessage(plugin.colorize(plugin.getConfig().getString("messages.no-permission", "&cYou don't have permission to use this command!")));
+            return;
+        }
+
+        MigrationManager migrationManager = plugin.getMigrationManager();
+        String action = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "status";
+
+        switch (action) {
+            case "start":
+                if (!plugin.getConfig().getBoolean("migration.enabled", true)) {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cMigrations are disabled in the configuration!"));
+                } else if (migrationManager.begin()) {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aStarted migration " + migrationManager.getMigrationName() + "."));
+                } else {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &eMigration " + migrationManager.getMigrationName() + " is already running."));
+                }
+                break;
+            case "stop":
+                migrationManager.stop();
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aMigration paused. Run /esql migrate start to resume it."));
+                break;
+            case "status":
+                MigrationProgress progress = migrationManager.getProgress();
+                sender.sendMessage(plugin.colorize("&6&l=== &eMigration " + migrationManager.getMigrationName() + " &6&l==="));
+                String state = progress != null && progress.isCompleted() ? "&aCompleted"
+                    : migrationManager.isRunning() ? "&aRunning" : "&7Stopped";
+                sender.sendMessage(plugin.colorize("&7State: " + state));
+                if (progress != null) {
+                    sender.sendMessage(plugin.colorize("&7Rows rewritten: &f" + progress.getRowsMigrated()));
+                    sender.sendMessage(plugin.colorize("&7Last id: &f" + progress.getLastId()));
+                }
+                if (migrationManager.isRunning()) {
+                    sender.sendMessage(plugin.colorize("&7Delay between chunks: &f" + migrationManager.getDelayTicks() + " ticks"));
+                }
+                if (migrationManager.getFailedRows() > 0) {
+                    sender.sendMessage(plugin.colorize("&7Unreadable rows skipped: &c" + migrationManager.getFailedRows()));
+                }
+                break;
+            case "partition":
+                handlePartition(sender, args);
+                break;
+            default:
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cUsage: /esql migrate [start|stop|status|partition]"));
+                break;
+        }
+    }
+
+    private void handlePartition(CommandSender sender, String[] args) {
+        if (args.length < 3 || !"confirm".equalsIgnoreCase(args[2])) {
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &eThis rebuilds the user_data table into monthly partitions. "
+                + "Writes to it wait until the rebuild is done, which takes as long as copying the table once, and it cannot be undone from the plugin. "
+                + "Other servers switch to the new layout on their own."));
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &eRun &f/esql migrate partition confirm &eto start it."));
+            return;
+        }
+
+        sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aPartitioning user_data..."));
+        databaseManager.convertToPartitions().whenCompleteAsync((converted, throwable) -> {
+            if (throwable != null) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cPartitioning failed: " + throwable.getMessage()));
+            } else if (converted) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aPartitioned user_data. The other servers switch to the new layout on their own."));
+            } else {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &euser_data is already partitioned, or the database does not support it."));
+            }
+        }, plugin.getMainThreadQueue());
+    }
+
+    private void handleRollback(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("essentialssql.admin.rollback")) {
+            sender.sendMessage(plugin.colorize(plugin.getConfig().getString("messages.no-permission", "&cYou don't have permission to use this command!")));
+            return;
+        }
+
+        HistoryManager historyManager = plugin.getHistoryManager();
+        if (!historyManager.isEnabled()) {
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cData history is disabled in the configuration!"));
+            return;
+        }
+
+        if (args.length < 3) {
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cUsage: /esql rollback <player> <time> &7(e.g. 30m, 2h, 1d12h)"));
+            return;
+        }
+
+        long ago = parseDuration(args[2]);
+        if (ago < 0) {
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cInvalid time! Use a combination of s, m, h, d and w, e.g. 1d12h"));
+            return;
+        }
+
+        Player online = plugin.getServer().getPlayerExact(args[1]);
+        UUID playerUuid;
+        String playerName;
+        if (online != null) {
+            playerUuid = online.getUniqueId();
+            playerName = online.getName();
+        } else {
+            PlayerNameIndex.Entry indexed = databaseManager.getNameIndex().find(args[1]);
+            if (indexed == null) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cNo data found for player " + args[1]));
+                return;
+            }
+            playerUuid = indexed.getUuid();
+            playerName = indexed.getName();
+        }
+
+        sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aLooking up the history of " + playerName + "..."));
+
+        CompletableFuture<HistoryManager.Version> rollbackFuture = historyManager.findVersion(playerUuid, System.currentTimeMillis() - ago)
+            .thenCompose(version -> {
+                if (version == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                String data;
+                try {
+                    data = plugin.getSettings().isCompressData() ? UserDataCodec.compress(version.getData()) : version.getData();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+
+                return databaseManager.saveUserData(playerUuid, playerName, data, UserDataSummary.extract(version.getData()))
+                    .thenApply(saved -> {
+                        if (!saved) {
+                            throw new IllegalStateException("the restored data could not be saved");
+                        }
+                        return version;
+                    });
+            });
+
+        rollbackFuture.whenCompleteAsync((version, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cRollback failed: " + cause.getMessage()));
+                return;
+            }
+
+            if (version == null) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cNo saved version of " + playerName + " is that old!"));
+                return;
+            }
+
+            String savedAt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(version.getSavedAt()));
+            sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aRestored version " + version.getVersion()
+                + " of " + playerName + " saved at " + savedAt + "."));
+
+            Player target = plugin.getServer().getPlayer(playerUuid);
+            if (target == null) {
+                return;
+            }
+
+            // replace the live profile too, or the next save would write the old data back
+            EssentialsBridge bridge = plugin.getEssentialsBridge();
+            bridge.flushUser(playerUuid);
+            userDataManager.loadPlayerData(playerUuid, playerName).thenAcceptAsync(loaded -> {
+                if (loaded && bridge.reloadUser(playerUuid)) {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aApplied the restored data to " + playerName + "."));
+                } else {
+                    sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &eCould not apply the restored data to " + playerName
+                        + " while online - it will be loaded on their next join."));
+                }
+            }, plugin.getMainThreadQueue());
+        }, plugin.getMainThreadQueue());
+    }
+
+    /**
+     * Parses durations like {@code 90s}, {@code 2h} or {@code 1d12h} into milliseconds, or -1.
+     */
+    private static long parseDuration(String input) {
+        long total = 0;
+        long number = -1;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = Character.toLowerCase(input.charAt(i));
+            if (c >= '0' && c <= '9') {
+                number = (number < 0 ? 0 : number * 10) + (c - '0');
+                if (number > 1_000_000) {
+                    return -1;
+                }
+                continue;
+            }
+
+            if (number < 0) {
+                return -1;
+            }
+
+            long unit;
+            switch (c) {
+                case 's': unit = 1_000L; break;
+                case 'm': unit = 60_000L; break;
+                case 'h': unit = 3_600_000L; break;
+                case 'd': unit = 86_400_000L; break;
+                case 'w': unit = 604_800_000L; break;
+                default: return -1;
+            }
+            total += number * unit;
+            number = -1;
+        }
+
+        return number < 0 && total > 0 ? total : -1;
     }
 
     private void handleReload(CommandSender sender) {
@@ -221,7 +512,20 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aConfiguration reloaded successfully!"));
         } catch (Exception e) {
             sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to reload configuration: " + e.getMessage()));
+            return;
         }
+
+        databaseManager.reloadPools().whenCompleteAsync((report, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cKept the current connection pool: " + cause.getMessage()));
+                return;
+            }
+
+            for (String line : report) {
+                sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r " + line));
+            }
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleStatus(CommandSender sender) {
@@ -234,15 +538,29 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
         boolean dbConnected = databaseManager.isConnected();
         sender.sendMessage(plugin.colorize("&7Database: " + (dbConnected ? "&aConnected" : "&cDisconnected")));
-
-        sender.sendMessage(plugin.colorize("&7Save on quit: " + (plugin.getConfig().getBoolean("settings.save-on-quit") ? "&aEnabled" : "&cDisabled")));
-        sender.sendMessage(plugin.colorize("&7Load on join: " + (plugin.getConfig().getBoolean("settings.load-on-join") ? "&aEnabled" : "&cDisabled")));
-        sender.sendMessage(plugin.colorize("&7Async operations: " + (plugin.getConfig().getBoolean("settings.async-operations") ? "&aEnabled" : "&cDisabled")));
-        sender.sendMessage(plugin.colorize("&7Data compression: " + (plugin.getConfig().getBoolean("data.compress-data") ? "&aEnabled" : "&cDisabled")));
+        CircuitBreaker.State circuit = databaseManager.getCircuitState();
+        sender.sendMessage(plugin.colorize("&7Circuit breaker: " + (circuit == CircuitBreaker.State.CLOSED ? "&aClosed" : "&c" + circuit.name())));
+        long spooled = databaseManager.getSpooledSaves();
+        if (spooled > 0) {
+            sender.sendMessage(plugin.colorize("&7Spooled saves: &e" + spooled));
+        }
+        sender.sendMessage(plugin.colorize("&7Read replica: " + (databaseManager.isReplicaEnabled() ? "&aEnabled" : "&7Disabled")));
+
+        PluginSettings settings = plugin.getSettings();
+        sender.sendMessage(plugin.colorize("&7Save on quit: " + (settings.isSaveOnQuit() ? "&aEnabled" : "&cDisabled")));
+        sender.sendMessage(plugin.colorize("&7Load on join: " + (settings.isLoadOnJoin() ? "&aEnabled" : "&cDisabled")));
+        sender.sendMessage(plugin.colorize("&7Async operations: " + (settings.isAsyncOperations() ? "&aEnabled" : "&cDisabled")));
+        sender.sendMessage(plugin.colorize("&7Data compression: " + (settings.isCompressData() ? "&aEnabled" : "&cDisabled")));
         sender.sendMessage(plugin.colorize("&7Cleanup enabled: " + (plugin.getConfig().getBoolean("cleanup.enabled") ? "&aEnabled" : "&cDisabled")));
 
         boolean essentialsFound = plugin.getServer().getPluginManager().getPlugin("Essentials") != null;
         sender.sendMessage(plugin.colorize("&7Essentials: " + (essentialsFound ? "&aFound" : "&cNot found")));
+
+        MetricsRegistry metrics = plugin.getMetricsRegistry();
+        sender.sendMessage(plugin.colorize("&7Performance monitoring: " + (metrics.isEnabled() ? "&aEnabled" : "&cDisabled")));
+        for (String line : metrics.formatStatusLines()) {
+            sender.sendMessage(plugin.colorize(line));
+        }
     }
 
     private void handleSync(CommandSender sender, String[] args) {
@@ -265,10 +583,13 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
         }
 
         sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aSyncing data for player " + target.getName() + "..."));
+        if (plugin.getSettings().isDirectEssentialsSync()) {
+            plugin.getEssentialsBridge().flushUser(target.getUniqueId());
+        }
 
         CompletableFuture<Boolean> syncFuture = userDataManager.savePlayerData(target.getUniqueId(), target.getName());
 
-        syncFuture.whenComplete((success, throwable) -> {
+        syncFuture.whenCompleteAsync((success, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cSync failed: " + throwable.getMessage()));
                 return;
@@ -279,7 +600,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             } else {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to sync data for " + target.getName()));
             }
-        });
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleDelete(CommandSender sender, String[] args) {
@@ -300,7 +621,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
 
             CompletableFuture<Boolean> deleteFuture = userDataManager.deleteUserdataFolder();
 
-            deleteFuture.whenComplete((success, throwable) -> {
+            deleteFuture.whenCompleteAsync((success, throwable) -> {
                 if (throwable != null) {
                     sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to delete userdata folder: " + throwable.getMessage()));
                     return;
@@ -311,7 +632,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
                 } else {
                     sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to delete userdata folder!"));
                 }
-            });
+            }, plugin.getMainThreadQueue());
 
         } else {
             sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cInvalid option! Use: userdata"));
@@ -338,10 +659,13 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
         }
 
         sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aForce saving data for player " + target.getName() + "..."));
+        if (plugin.getSettings().isDirectEssentialsSync()) {
+            plugin.getEssentialsBridge().flushUser(target.getUniqueId());
+        }
 
         CompletableFuture<Boolean> saveFuture = userDataManager.savePlayerData(target.getUniqueId(), target.getName());
 
-        saveFuture.whenComplete((success, throwable) -> {
+        saveFuture.whenCompleteAsync((success, throwable) -> {
             if (throwable != null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cForce save failed: " + throwable.getMessage()));
                 return;
@@ -352,7 +676,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             } else {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to force save data for " + target.getName()));
             }
-        });
+        }, plugin.getMainThreadQueue());
     }
 
     private void handleViewData(CommandSender sender, String[] args) {
@@ -369,15 +693,27 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
         String playerName = args[1];
         sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &aLooking up data for player " + playerName + "..."));
 
-        CompletableFuture<Void> viewFuture = databaseManager.getAllUserData().thenAccept(players -> {
-            DatabaseManager.PlayerData foundPlayer = null;
-            for (DatabaseManager.PlayerData playerData : players) {
-                if (playerData.getName().equalsIgnoreCase(playerName)) {
-                    foundPlayer = playerData;
-                    break;
+        PlayerNameIndex nameIndex = databaseManager.getNameIndex();
+        PlayerNameIndex.Entry indexed = nameIndex.find(playerName);
+        CompletableFuture<DatabaseManager.PlayerData> lookupFuture;
+        if (indexed != null) {
+            lookupFuture = databaseManager.getUserData(indexed.getUuid()).thenApply(data ->
+                data != null ? new DatabaseManager.PlayerData(indexed.getUuid(), indexed.getName(), data, null) : null);
+        } else if (nameIndex.isLoaded()) {
+            lookupFuture = CompletableFuture.completedFuture(null);
+        } else {
+            // index still loading, fall back to scanning the table
+            lookupFuture = databaseManager.getAllUserData().thenApply(players -> {
+                for (DatabaseManager.PlayerData playerData : players) {
+                    if (playerData.getName().equalsIgnoreCase(playerName)) {
+                        return playerData;
+                    }
                 }
-            }
+                return null;
+            });
+        }
 
+        CompletableFuture<Void> viewFuture = lookupFuture.thenAcceptAsync(foundPlayer -> {
             if (foundPlayer == null) {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cNo data found for player " + playerName));
                 return;
@@ -453,12 +789,12 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
                 sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &7Data Preview:"));
                 sender.sendMessage(plugin.colorize("&7" + preview.replace("\n", "\\n")));
             }
-        });
+        }, plugin.getMainThreadQueue());
 
-        viewFuture.exceptionally(throwable -> {
+        viewFuture.exceptionallyAsync(throwable -> {
             sender.sendMessage(plugin.colorize("&7[&bEssentialsSQL&7]&r &cFailed to view data: " + throwable.getMessage()));
             return null;
-        });
+        }, plugin.getMainThreadQueue());
     }
 
     private void sendHelp(CommandSender sender) {
@@ -476,6 +812,19 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage(plugin.colorize("&e/esql baltop [limit] &7- Show balance top from database"));
         }
 
+        if (sender.hasPermission("essentialssql.admin.shopstats")) {
+            sender.sendMessage(plugin.colorize("&e/esql shopstats [hours] [item] &7- Show shop sales from hourly rollups"));
+        }
+
+        if (sender.hasPermission("essentialssql.admin.migrate")) {
+            sender.sendMessage(plugin.colorize("&e/esql migrate [start|stop|status] &7- Control the background data migration"));
+            sender.sendMessage(plugin.colorize("&e/esql migrate partition &7- Rebuild user_data into monthly partitions (MySQL)"));
+        }
+
+        if (sender.hasPermission("essentialssql.admin.rollback")) {
+            sender.sendMessage(plugin.colorize("&e/esql rollback <player> <time> &7- Restore player data saved that long ago"));
+        }
+
         if (sender.hasPermission("essentialssql.admin.cleanup")) {
             sender.sendMessage(plugin.colorize("&e/esql cleanup [days] &7- Remove inactive players from database"));
         }
@@ -504,7 +853,7 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
         List<String> completions = new ArrayList<>();
 
         if (args.length == 1) {
-            List<String> subCommands = Arrays.asList("import", "export", "baltop", "cleanup", "reload", "status", "sync", "delete", "forcesave", "viewdata");
+            List<String> subCommands = Arrays.asList("import", "export", "baltop", "shopstats", "migrate", "rollback", "cleanup", "reload", "status", "sync", "delete", "forcesave", "viewdata");
 
             for (String subCommand : subCommands) {
                 if (subCommand.startsWith(args[0].toLowerCase())) {
@@ -519,12 +868,25 @@ public class EssentialsSQLCommand implements CommandExecutor, TabCompleter {
                 }
             }
         } else if (args.length == 2) {
-            if ("sync".equalsIgnoreCase(args[0]) || "forcesave".equalsIgnoreCase(args[0]) || "viewdata".equalsIgnoreCase(args[0])) {
+            if ("viewdata".equalsIgnoreCase(args[0]) || "rollback".equalsIgnoreCase(args[0])) {
+                completions.addAll(databaseManager.getNameIndex().complete(args[1], MAX_NAME_COMPLETIONS));
+                for (Player player : plugin.getServer().getOnlinePlayers()) {
+                    if (player.getName().toLowerCase().startsWith(args[1].toLowerCase()) && !completions.contains(player.getName())) {
+                        completions.add(player.getName());
+                    }
+                }
+            } else if ("sync".equalsIgnoreCase(args[0]) || "forcesave".equalsIgnoreCase(args[0])) {
                 for (Player player : plugin.getServer().getOnlinePlayers()) {
                     if (player.getName().toLowerCase().startsWith(args[1].toLowerCase())) {
                         completions.add(player.getName());
                     }
                 }
+            } else if ("migrate".equalsIgnoreCase(args[0])) {
+                for (String action : Arrays.asList("start", "stop", "status", "partition")) {
+                    if (action.startsWith(args[1].toLowerCase())) {
+                        completions.add(action);
+                    }
+                }
             } else if ("delete".equalsIgnoreCase(args[0])) {
                 if ("userdata".startsWith(args[1].toLowerCase())) {
                     completions.add("userdata");
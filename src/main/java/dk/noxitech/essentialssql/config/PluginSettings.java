@@ -0,0 +1,147 @@
+package dk.noxitech.essentialssql.config;
+
+import dk.noxitech.essentialssql.utils.UserDataFilter;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable snapshot of the configuration values read on hot paths.
+ * A new instance is built on every config (re)load and swapped in atomically,
+ * so readers never do map lookups against the live {@link FileConfiguration}.
+ */
+public final class PluginSettings {
+
+    public enum DebugCategory {
+        GENERAL,
+        DATABASE,
+        FILE
+    }
+
+    private static final String[] FILTER_KEYS = {
+        "homes", "money", "mail", "kits", "cooldowns", "warps", "jail", "mutes",
+        "social-spy", "god-mode", "fly", "nicknames", "ignore-list", "teleport-requests"
+    };
+
+    private final boolean saveOnQuit;
+    private final boolean loadOnJoin;
+    private final boolean deleteLocalAfterSave;
+    private final boolean asyncOperations;
+    private final int autoSyncInterval;
+    private final long mainThreadBudgetNanos;
+    private final boolean directEssentialsSync;
+    private final long preloginTimeoutMillis;
+
+    private final boolean filtersEnabled;
+    private final Map<String, Boolean> filters;
+    private final UserDataFilter userDataFilter;
+    private final boolean compressData;
+    private final int maxDataSizeKb;
+    private final boolean deduplicateData;
+
+    private final boolean balanceTopEnabled;
+    private final String placeholderEmpty;
+
+    private final boolean debugGeneral;
+    private final boolean debugDatabase;
+    private final boolean debugFile;
+    private final boolean performanceMonitoring;
+    private final double debugSampleRate;
+
+    private final boolean prometheusEnabled;
+    private final String prometheusBindAddress;
+    private final int prometheusPort;
+
+    private PluginSettings(FileConfiguration config) {
+        this.saveOnQuit = config.getBoolean("settings.save-on-quit", true);
+        this.loadOnJoin = config.getBoolean("settings.load-on-join", true);
+        this.deleteLocalAfterSave = config.getBoolean("settings.delete-local-after-save", true);
+        this.asyncOperations = config.getBoolean("settings.async-operations", true);
+        this.autoSyncInterval = config.getInt("settings.auto-sync-interval", 0);
+        this.mainThreadBudgetNanos = (long) (Math.max(0.1, config.getDouble("settings.main-thread-budget-ms", 2.0)) * 1_000_000L);
+        this.directEssentialsSync = config.getBoolean("settings.direct-essentials-sync", true);
+        this.preloginTimeoutMillis = Math.max(0, config.getLong("settings.prelogin-timeout-ms", 3000));
+
+        this.filtersEnabled = config.getBoolean("data.filters.enabled", false);
+        Map<String, Boolean> filterFlags = new LinkedHashMap<>();
+        for (String key : FILTER_KEYS) {
+            filterFlags.put(key, config.getBoolean("data.filters." + key, true));
+        }
+        this.filters = Map.copyOf(filterFlags);
+        this.userDataFilter = new UserDataFilter(filters);
+        this.compressData = config.getBoolean("data.compress-data", true);
+        this.maxDataSizeKb = config.getInt("data.max-data-size", 0);
+        this.deduplicateData = config.getBoolean("data.deduplicate", false);
+
+        this.balanceTopEnabled = config.getBoolean("commands.balance-top.enabled", true);
+        this.placeholderEmpty = config.getString("placeholders.empty", "-");
+
+        boolean debugEnabled = config.getBoolean("debug.enabled", false);
+        this.debugGeneral = debugEnabled;
+        this.debugDatabase = debugEnabled && config.getBoolean("debug.log-database-operations", false);
+        this.debugFile = debugEnabled && config.getBoolean("debug.log-file-operations", false);
+        this.performanceMonitoring = config.getBoolean("debug.performance-monitoring", false);
+        this.debugSampleRate = Math.max(0.0, Math.min(1.0, config.getDouble("debug.sample-rate", 1.0)));
+
+        this.prometheusEnabled = config.getBoolean("metrics.prometheus.enabled", false);
+        this.prometheusBindAddress = config.getString("metrics.prometheus.bind-address", "127.0.0.1");
+        this.prometheusPort = config.getInt("metrics.prometheus.port", 9465);
+    }
+
+    public static PluginSettings fromConfig(FileConfiguration config) {
+        return new PluginSettings(config);
+    }
+
+    /**
+     * Cheap guard for debug output. Callers must check this before building
+     * any log message so the disabled case costs a single field read.
+     */
+    public boolean shouldLog(DebugCategory category) {
+        boolean enabled;
+        switch (category) {
+            case DATABASE:
+                enabled = debugDatabase;
+                break;
+            case FILE:
+                enabled = debugFile;
+                break;
+            default:
+                enabled = debugGeneral;
+                break;
+        }
+
+        if (!enabled) {
+            return false;
+        }
+
+        return debugSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < debugSampleRate;
+    }
+
+    public boolean isSaveOnQuit() { return saveOnQuit; }
+    public boolean isLoadOnJoin() { return loadOnJoin; }
+    public boolean isDeleteLocalAfterSave() { return deleteLocalAfterSave; }
+    public boolean isAsyncOperations() { return asyncOperations; }
+    public int getAutoSyncInterval() { return autoSyncInterval; }
+    public long getMainThreadBudgetNanos() { return mainThreadBudgetNanos; }
+    public boolean isDirectEssentialsSync() { return directEssentialsSync; }
+    public long getPreloginTimeoutMillis() { return preloginTimeoutMillis; }
+
+    public boolean isFiltersEnabled() { return filtersEnabled; }
+    public Map<String, Boolean> getFilters() { return filters; }
+    public UserDataFilter getUserDataFilter() { return userDataFilter; }
+    public boolean isCompressData() { return compressData; }
+    public int getMaxDataSizeKb() { return maxDataSizeKb; }
+    public boolean isDeduplicateData() { return deduplicateData; }
+
+    public boolean isBalanceTopEnabled() { return balanceTopEnabled; }
+    public String getPlaceholderEmpty() { return placeholderEmpty; }
+
+    public boolean isPerformanceMonitoring() { return performanceMonitoring; }
+    public double getDebugSampleRate() { return debugSampleRate; }
+
+    public boolean isPrometheusEnabled() { return prometheusEnabled; }
+    public String getPrometheusBindAddress() { return prometheusBindAddress; }
+    public int getPrometheusPort() { return prometheusPort; }
+}
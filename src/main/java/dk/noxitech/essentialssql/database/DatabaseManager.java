@@ -1,31 +1,152 @@
 package dk.noxitech.essentialssql.database;
 
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.api.PlayerProfile;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.manager.HistoryManager;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry.Phase;
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import dk.noxitech.essentialssql.utils.UserDataSummary;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.math.BigDecimal;
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 
 public class DatabaseManager {
 
+    private static final long UNKNOWN_VERSION = -1L;
+    private static final int MAX_KNOWN_VERSIONS = 50_000;
+    private static final long JOURNAL_REPLAY_INTERVAL_TICKS = 100L;
+    private static final long PARTITION_MAINTENANCE_INTERVAL_TICKS = 20L * 60L * 60L * 6L;
+    private static final long POOL_DRAIN_TIMEOUT_MILLIS = 60_000L;
+    private static final int IN_LIST_CHUNK = 500;
+
     private final Main plugin;
-    private HikariDataSource dataSource;
+    private final MetricsRegistry metrics;
+    private final StorageBackend backend;
+    private volatile HikariDataSource dataSource;
+    private volatile HikariDataSource replicaDataSource;
+    private final Map<UUID, Long> recentWrites = new ConcurrentHashMap<>();
+    // data_version this server last read or wrote per player, stored with spooled saves
+    private final Map<UUID, Long> knownVersions = new ConcurrentHashMap<>();
+    // the outcome of replaying a player's spooled saves, so later saves queued behind them are checked against it
+    private final Map<UUID, ReplayedChain> replayedChains = new ConcurrentHashMap<>();
+    private volatile long readYourWritesWindowMillis;
+    private volatile boolean routePlayerLoads;
     private final String tablePrefix = "essentials_";
+    private final CircuitBreaker circuitBreaker;
+    private SaveJournal saveJournal;
+    private final PlayerNameIndex nameIndex = new PlayerNameIndex();
+    private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+    private final String saveUserDataSql;
+    private final String updateUserDataInPlaceSql;
+    private final String upsertBlobSql;
+    private final String lockPlayerKeySql;
+    private final String upsertArchiveSql;
+    private volatile UserDataPartitions partitions;
+    private final String updateBalanceCacheSql;
+    private final String insertBalanceDeltaSql;
+    private final String upsertShopRollupSql;
 
     public DatabaseManager(Main plugin) {
         this.plugin = plugin;
+        this.metrics = plugin.getMetricsRegistry();
+        this.backend = StorageBackend.forType(plugin.getConfig().getString("database.type", "MySQL"));
+        this.circuitBreaker = new CircuitBreaker(
+            plugin.getConfig().getInt("database.circuit-breaker.failure-threshold", 3),
+            plugin.getConfig().getLong("database.circuit-breaker.open-seconds", 30) * 1000L);
+
+        try {
+            this.saveJournal = new SaveJournal(new File(plugin.getDataFolder(), "journal"));
+            if (saveJournal.hasPending()) {
+                plugin.getLogger().warning(String.format("Found %d spooled saves from a previous outage - they will be replayed once the database is reachable",
+                    saveJournal.getPendingRecords()));
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to open the local save journal - saves will fail while the database is unreachable", e);
+        }
+
+        this.saveUserDataSql = backend.upsert(tablePrefix + "user_data",
+            List.of("player_uuid", "player_name", "data", "last_account_name", "money", "nickname", "logout_time", "jailed",
+                "data_version", "format_version", "blob_hash", "active_month"),
+            List.of("player_uuid"),
+            "player_name = " + backend.insertedValue("player_name")
+                + ", data = " + backend.insertedValue("data")
+                + ", last_account_name = " + backend.insertedValue("last_account_name")
+                + ", money = " + backend.insertedValue("money")
+                + ", nickname = " + backend.insertedValue("nickname")
+                + ", logout_time = " + backend.insertedValue("logout_time")
+                + ", jailed = " + backend.insertedValue("jailed")
+                + ", data_version = data_version + 1"
+                + ", format_version = " + backend.insertedValue("format_version")
+                + ", blob_hash = " + backend.insertedValue("blob_hash")
+                + ", active_month = " + backend.insertedValue("active_month")
+                + ", last_login = CURRENT_TIMESTAMP");
+        this.updateUserDataInPlaceSql = String.format("UPDATE %suser_data SET player_name = ?, data = ?, last_account_name = ?, "
+            + "money = ?, nickname = ?, logout_time = ?, jailed = ?, data_version = data_version + 1, format_version = ?, "
+            + "last_login = CURRENT_TIMESTAMP WHERE player_uuid = ? AND blob_hash IS NULL AND active_month = ?", tablePrefix);
+        this.lockPlayerKeySql = backend.upsert(tablePrefix + "user_data_keys",
+            List.of("player_uuid"), List.of("player_uuid"),
+            "player_uuid = " + backend.insertedValue("player_uuid"));
+        this.upsertBlobSql = backend.upsert(tablePrefix + "user_data_blobs",
+            List.of("hash", "data", "ref_count"), List.of("hash"),
+            "ref_count = ref_count + 1");
+        this.upsertArchiveSql = backend.upsert(tablePrefix + "user_data_archive",
+            List.of("player_uuid", "player_name", "data", "last_login"), List.of("player_uuid"),
+            "player_name = " + backend.insertedValue("player_name")
+                + ", data = " + backend.insertedValue("data")
+                + ", last_login = " + backend.insertedValue("last_login")
+                + ", archived_at = CURRENT_TIMESTAMP");
+        this.updateBalanceCacheSql = backend.upsert(tablePrefix + "balance_cache",
+            List.of("player_uuid", "player_name", "balance"), List.of("player_uuid"),
+            "player_name = " + backend.insertedValue("player_name")
+                + ", balance = " + backend.insertedValue("balance")
+                + ", last_updated = CURRENT_TIMESTAMP");
+        this.insertBalanceDeltaSql = backend.insertIgnore(tablePrefix + "balance_deltas",
+            List.of("delta_key", "player_uuid", "amount"));
+        this.upsertShopRollupSql = backend.upsert(tablePrefix + "shop_rollups",
+            List.of("hour_bucket", "plugin_name", "owner_uuid", "item", "transaction_type",
+                "trade_count", "quantity", "total_price", "min_unit_price", "max_unit_price"),
+            List.of("hour_bucket", "owner_uuid", "item", "transaction_type", "plugin_name"),
+            "trade_count = trade_count + " + backend.insertedValue("trade_count")
+                + ", quantity = quantity + " + backend.insertedValue("quantity")
+                + ", total_price = total_price + " + backend.insertedValue("total_price")
+                + ", min_unit_price = " + backend.least("min_unit_price", backend.insertedValue("min_unit_price"))
+                + ", max_unit_price = " + backend.greatest("max_unit_price", backend.insertedValue("max_unit_price")));
     }
 
     public boolean initialize() {
         try {
             setupDataSource();
+            setupReplicaDataSource();
             createTables();
+            registerPoolGauges();
             return true;
         } catch (Exception e) {
             plugin.getLogger().severe("Failed to initialize database: " + e.getMessage());
@@ -34,265 +155,2426 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Initializes against an already configured pool instead of building one from config.yml.
+     * Used by the load simulator to run against an embedded database.
+     */
+    public boolean initialize(HikariDataSource externalDataSource) {
+        try {
+            this.dataSource = externalDataSource;
+            createTables();
+            registerPoolGauges();
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to initialize database", e);
+            return false;
+        }
+    }
+
     private void setupDataSource() {
-        FileConfiguration config = plugin.getConfig();
+        this.dataSource = new HikariDataSource(primaryPoolConfig(plugin.getConfig()));
+        plugin.getLogger().info("Using " + backend.getName() + " storage backend");
+    }
 
+    private HikariConfig primaryPoolConfig(FileConfiguration config) {
         HikariConfig hikariConfig = new HikariConfig();
+        backend.configure(hikariConfig, config, plugin.getDataFolder());
+
+        hikariConfig.setMinimumIdle(config.getInt("database.pool.minimum-idle", 2));
+        hikariConfig.setMaximumPoolSize(config.getInt("database.pool.maximum-pool-size", 10));
+        hikariConfig.setConnectionTimeout(config.getLong("database.pool.connection-timeout", 30000));
+        hikariConfig.setIdleTimeout(config.getLong("database.pool.idle-timeout", 600000));
+        hikariConfig.setMaxLifetime(config.getLong("database.pool.max-lifetime", 1800000));
+        return hikariConfig;
+    }
 
-        String host = config.getString("database.host", "localhost");
-        int port = config.getInt("database.port", 3306);
-        String database = config.getString("database.database", "essentials");
-        String username = config.getString("database.username", "root");
-        String password = config.getString("database.password", "password");
+    /**
+     * Builds the optional read-only pool used by read-mostly operations (baltop, viewdata,
+     * export, shop stats). Any failure leaves reads on the primary.
+     */
+    private void setupReplicaDataSource() {
+        HikariConfig hikariConfig = replicaPoolConfig(plugin.getConfig());
+        if (hikariConfig == null) {
+            return;
+        }
 
-        String jdbcUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=utf8", 
-                                     host, port, database);
+        try {
+            this.replicaDataSource = new HikariDataSource(hikariConfig);
+            plugin.getLogger().info("Read replica pool enabled");
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to connect to read replica - all reads stay on the primary", e);
+        }
+    }
 
-        hikariConfig.setJdbcUrl(jdbcUrl);
-        hikariConfig.setUsername(username);
-        hikariConfig.setPassword(password);
-        hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
+    /**
+     * The replica pool settings, or null when no replica is configured.
+     */
+    private HikariConfig replicaPoolConfig(FileConfiguration config) {
+        if (!config.getBoolean("database.replica.enabled", false)) {
+            return null;
+        }
 
-        hikariConfig.setMinimumIdle(config.getInt("database.pool.minimum-idle", 2));
-        hikariConfig.setMaximumPoolSize(config.getInt("database.pool.maximum-pool-size", 10));
+        if (!(backend instanceof MySqlBackend)) {
+            plugin.getLogger().warning("Read replicas are only supported with MySQL - all reads stay on the primary");
+            return null;
+        }
+
+        HikariConfig hikariConfig = new HikariConfig();
+        ((MySqlBackend) backend).configureReplica(hikariConfig, config);
+        hikariConfig.setPoolName("EssentialsSQL-Replica");
+        hikariConfig.setMinimumIdle(config.getInt("database.replica.pool.minimum-idle", 1));
+        hikariConfig.setMaximumPoolSize(config.getInt("database.replica.pool.maximum-pool-size", 5));
         hikariConfig.setConnectionTimeout(config.getLong("database.pool.connection-timeout", 30000));
         hikariConfig.setIdleTimeout(config.getLong("database.pool.idle-timeout", 600000));
         hikariConfig.setMaxLifetime(config.getLong("database.pool.max-lifetime", 1800000));
 
-        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
-        hikariConfig.addDataSourceProperty("useLocalSessionState", "true");
-        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
-        hikariConfig.addDataSourceProperty("cacheResultSetMetadata", "true");
-        hikariConfig.addDataSourceProperty("cacheServerConfiguration", "true");
-        hikariConfig.addDataSourceProperty("elideSetAutoCommits", "true");
-        hikariConfig.addDataSourceProperty("maintainTimeStats", "false");
+        this.readYourWritesWindowMillis = config.getLong("database.replica.read-your-writes-window", 10) * 1000L;
+        this.routePlayerLoads = config.getBoolean("database.replica.route-player-loads", false);
+        return hikariConfig;
+    }
+
+    /**
+     * Applies the {@code database.pool} and {@code database.replica} settings from the current
+     * config.yml without a restart. Size and timeout changes are applied to the running pools;
+     * a changed host, database or login builds a new pool, switches new operations to it, and
+     * closes the old one once its in-flight queries have returned.
+     *
+     * @return lines describing the effective settings
+     */
+    public CompletableFuture<List<String>> reloadPools() {
+        return CompletableFuture.supplyAsync(() -> {
+            FileConfiguration config = plugin.getConfig();
+            List<String> report = new ArrayList<>();
+
+            String configuredType = StorageBackend.forType(config.getString("database.type", "MySQL")).getName();
+            if (!configuredType.equals(backend.getName())) {
+                report.add("&eChanging database.type to " + configuredType + " needs a restart - still using " + backend.getName());
+            }
+
+            HikariDataSource primary = reconfigure(dataSource, primaryPoolConfig(config));
+            if (primary != dataSource) {
+                HikariDataSource old = dataSource;
+                dataSource = primary;
+                drainAndClose(old);
+                report.add("&aPrimary pool rebuilt for the new connection settings");
+            }
+            report.add(describePool("Primary", primary));
+
+            // a replica that fails to connect with the new settings keeps the one in use, only disabling it closes that
+            HikariConfig replicaConfig = replicaPoolConfig(config);
+            HikariDataSource replica = null;
+            if (replicaConfig != null) {
+                try {
+                    replica = reconfigure(replicaDataSource, replicaConfig);
+                } catch (RuntimeException e) {
+                    replica = replicaDataSource;
+                    plugin.getLogger().log(Level.WARNING, "Failed to connect to the read replica with the new settings", e);
+                    report.add("&cReplica: " + e.getMessage() + (replica != null ? " - keeping the current replica" : " - reads stay on the primary"));
+                }
+            }
+            if (replica != replicaDataSource) {
+                HikariDataSource old = replicaDataSource;
+                replicaDataSource = replica;
+                drainAndClose(old);
+            }
+            report.add(replica != null ? describePool("Replica", replica) : "&7Replica: &fdisabled");
+
+            return report;
+        });
+    }
+
+    /**
+     * Returns {@code current} with the new sizes and timeouts applied if it still points at the same
+     * database with the same login, otherwise a new pool. A new pool has to hand out a connection
+     * before it is returned, so a typo in the host never replaces a working pool.
+     */
+    private HikariDataSource reconfigure(HikariDataSource current, HikariConfig wanted) {
+        if (current != null && !current.isClosed()
+                && Objects.equals(current.getJdbcUrl(), wanted.getJdbcUrl())
+                && Objects.equals(current.getUsername(), wanted.getUsername())
+                && Objects.equals(current.getPassword(), wanted.getPassword())) {
+            HikariConfigMXBean live = current.getHikariConfigMXBean();
+            live.setMaximumPoolSize(wanted.getMaximumPoolSize());
+            live.setMinimumIdle(wanted.getMinimumIdle());
+            live.setConnectionTimeout(wanted.getConnectionTimeout());
+            live.setIdleTimeout(wanted.getIdleTimeout());
+            live.setMaxLifetime(wanted.getMaxLifetime());
+            return current;
+        }
+
+        HikariDataSource fresh = new HikariDataSource(wanted);
+        try (Connection ignored = fresh.getConnection()) {
+            return fresh;
+        } catch (SQLException e) {
+            fresh.close();
+            throw new IllegalStateException("Could not connect with the new pool settings: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes a pool that no longer gets new work once its borrowed connections are back.
+     * HikariCP's own close aborts connections still in use, so wait for them first.
+     */
+    private void drainAndClose(HikariDataSource old) {
+        if (old == null || old.isClosed()) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            long deadline = System.currentTimeMillis() + POOL_DRAIN_TIMEOUT_MILLIS;
+            try {
+                while (poolStat(old, HikariPoolMXBean::getActiveConnections) > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100L);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            long stillActive = poolStat(old, HikariPoolMXBean::getActiveConnections);
+            old.close();
+            if (stillActive > 0) {
+                plugin.getLogger().warning("Closed the previous connection pool with " + stillActive + " connections still in use");
+            } else if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info("Previous connection pool drained and closed");
+            }
+        });
+    }
+
+    private static String describePool(String label, HikariDataSource pool) {
+        HikariConfigMXBean live = pool.getHikariConfigMXBean();
+        String url = pool.getJdbcUrl();
+        int query = url.indexOf('?');
+        return String.format("&7%s: &f%s &7max &f%d &7min idle &f%d &7timeout &f%dms",
+            label, query >= 0 ? url.substring(0, query) : url, live.getMaximumPoolSize(), live.getMinimumIdle(),
+            live.getConnectionTimeout());
+    }
+
+    private void createTables() throws SQLException {
+        List<String> statements = new ArrayList<>();
+
+        statements.addAll(backend.createTable(tablePrefix + "user_data", List.of(
+            backend.autoIncrementPrimaryKey(),
+            "player_uuid VARCHAR(36) NOT NULL UNIQUE",
+            "player_name VARCHAR(16) NOT NULL",
+            "data LONGTEXT NOT NULL",
+            "last_login " + backend.updatedTimestamp(),
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP"
+        ), List.of(
+            "idx_player_uuid (player_uuid)",
+            "idx_player_name (player_name)",
+            "idx_last_login (last_login)"
+        )));
+
+        statements.addAll(backend.createTable(tablePrefix + "balance_cache", List.of(
+            "player_uuid VARCHAR(36) NOT NULL PRIMARY KEY",
+            "player_name VARCHAR(16) NOT NULL",
+            "balance DECIMAL(20,2) NOT NULL",
+            "last_updated " + backend.updatedTimestamp()
+        ), List.of(
+            "idx_balance (balance DESC)",
+            "idx_player_name (player_name)"
+        )));
+
+        statements.addAll(backend.createTable(tablePrefix + "balance_deltas", List.of(
+            backend.autoIncrementPrimaryKey(),
+            "delta_key CHAR(36) NOT NULL UNIQUE",
+            "player_uuid VARCHAR(36) NOT NULL",
+            "amount DECIMAL(20,2) NOT NULL",
+            "applied BOOLEAN NOT NULL DEFAULT 0",
+            "delivered BOOLEAN NOT NULL DEFAULT 0",
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP"
+        ), List.of(
+            "idx_applied_created (applied, created_at)",
+            "idx_player_delivered (player_uuid, delivered)"
+        )));
+
+        statements.addAll(backend.createTable(tablePrefix + "shop_transactions", List.of(
+            backend.autoIncrementPrimaryKey(),
+            "player_uuid VARCHAR(36) NOT NULL",
+            "plugin_name VARCHAR(32) NOT NULL",
+            "transaction_type VARCHAR(16) NOT NULL",
+            "amount DECIMAL(20,2) NOT NULL",
+            "item VARCHAR(64)",
+            "quantity INT NOT NULL DEFAULT 0",
+            "counterparty VARCHAR(16)",
+            "delivered BOOLEAN NOT NULL DEFAULT 0",
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP",
+            "delivered_at TIMESTAMP NULL"
+        ), List.of(
+            "idx_pending (player_uuid, delivered, created_at)"
+        )));
+
+        // one row per player, locked by saves on the partitioned layout, where user_data cannot have a unique key on player_uuid alone
+        statements.addAll(backend.createTable(tablePrefix + "user_data_keys", List.of(
+            "player_uuid VARCHAR(36) NOT NULL PRIMARY KEY"
+        ), List.of()));
+
+        statements.addAll(backend.createTable(tablePrefix + "user_data_blobs", List.of(
+            "hash CHAR(64) NOT NULL PRIMARY KEY",
+            "data LONGTEXT NOT NULL",
+            "ref_count INT NOT NULL DEFAULT 0",
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP"
+        ), List.of()));
+
+        statements.addAll(backend.createCompressedTable(tablePrefix + "user_data_archive", List.of(
+            "player_uuid VARCHAR(36) NOT NULL PRIMARY KEY",
+            "player_name VARCHAR(16) NOT NULL",
+            "data LONGBLOB NOT NULL",
+            "last_login TIMESTAMP NULL",
+            "archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP"
+        ), List.of()));
+
+        statements.addAll(backend.createTable(tablePrefix + "user_data_history", List.of(
+            backend.autoIncrementPrimaryKey(),
+            "player_uuid VARCHAR(36) NOT NULL",
+            "version INT NOT NULL",
+            "snapshot BOOLEAN NOT NULL DEFAULT 0",
+            "payload LONGBLOB NOT NULL",
+            "saved_at BIGINT NOT NULL"
+        ), List.of()));
+
+        statements.addAll(backend.createTable(tablePrefix + "migrations", List.of(
+            "name VARCHAR(64) NOT NULL PRIMARY KEY",
+            "last_id BIGINT NOT NULL DEFAULT 0",
+            "rows_migrated BIGINT NOT NULL DEFAULT 0",
+            "completed BOOLEAN NOT NULL DEFAULT 0",
+            "updated_at " + backend.updatedTimestamp()
+        ), List.of()));
+
+        statements.addAll(backend.createTable(tablePrefix + "shop_rollups", List.of(
+            "hour_bucket BIGINT NOT NULL",
+            "plugin_name VARCHAR(32) NOT NULL",
+            "owner_uuid VARCHAR(36) NOT NULL",
+            "item VARCHAR(64) NOT NULL",
+            "transaction_type VARCHAR(16) NOT NULL",
+            "trade_count INT NOT NULL",
+            "quantity BIGINT NOT NULL",
+            "total_price DECIMAL(20,2) NOT NULL",
+            "min_unit_price DECIMAL(20,4) NOT NULL",
+            "max_unit_price DECIMAL(20,4) NOT NULL",
+            "PRIMARY KEY (hour_bucket, owner_uuid, item, transaction_type, plugin_name)"
+        ), List.of(
+            "idx_item_hour (item, hour_bucket)",
+            "idx_owner_hour (owner_uuid, hour_bucket)"
+        )));
+
+        try (Connection conn = getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                for (String statement : statements) {
+                    stmt.execute(statement);
+                }
+            }
+
+            ensureUserDataColumns(conn);
+            ensureBalanceDeltaColumns(conn);
+            ensureUniqueHistoryVersions(conn);
+            setupPartitioning(conn);
+        }
+
+        plugin.getLogger().info("Database tables created/verified successfully");
+    }
+
+    private void ensureUserDataColumns(Connection conn) throws SQLException {
+        String table = tablePrefix + "user_data";
+        ensureColumn(conn, table, "last_account_name", "VARCHAR(16)", "idx_last_account_name (last_account_name)");
+        ensureColumn(conn, table, "money", "DECIMAL(20,2)", "idx_money (money)");
+        ensureColumn(conn, table, "nickname", "VARCHAR(64)", "idx_nickname (nickname)");
+        ensureColumn(conn, table, "logout_time", "BIGINT", "idx_logout_time (logout_time)");
+        ensureColumn(conn, table, "jailed", "BOOLEAN NOT NULL DEFAULT 0", "idx_jailed (jailed)");
+        ensureColumn(conn, table, "data_version", "BIGINT NOT NULL DEFAULT 0", null);
+        ensureColumn(conn, table, "format_version", "INT NOT NULL DEFAULT 0", null);
+        ensureColumn(conn, table, "blob_hash", "CHAR(64)", "idx_blob_hash (blob_hash)");
+        ensureColumn(conn, table, "active_month", "INT NOT NULL DEFAULT 0", null);
+    }
+
+    /**
+     * Deltas applied before delivery was tracked count as delivered, since the players' live
+     * balances have long been overwritten with the cached ones.
+     */
+    private void ensureBalanceDeltaColumns(Connection conn) throws SQLException {
+        String table = tablePrefix + "balance_deltas";
+        if (ensureColumn(conn, table, "delivered", "BOOLEAN NOT NULL DEFAULT 0", "idx_player_delivered (player_uuid, delivered)")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(String.format("UPDATE %s SET delivered = 1 WHERE applied = 1", table));
+            }
+        }
+    }
+
+    /**
+     * Uses the month-partitioned layout if the table already has it. A table that is already
+     * partitioned keeps being treated as such even if the option was turned off again,
+     * because saves have to move rows between partitions. Converting the table is left to
+     * {@link #convertToPartitions()}, since it rebuilds the whole table.
+     */
+    private void setupPartitioning(Connection conn) throws SQLException {
+        boolean wanted = plugin.getConfig().getBoolean("database.partitioning.enabled", false);
+        if (!backend.supportsPartitioning()) {
+            if (wanted) {
+                plugin.getLogger().warning("database.partitioning is only supported on MySQL - ignoring it for " + backend.getName());
+            }
+            return;
+        }
+
+        UserDataPartitions layout = new UserDataPartitions(tablePrefix + "user_data");
+        if (!layout.isPartitioned(conn)) {
+            if (wanted) {
+                plugin.getLogger().warning("database.partitioning is enabled but " + tablePrefix + "user_data is not partitioned yet - "
+                    + "run /esql migrate partition to rebuild it");
+            }
+            return;
+        }
+
+        layout.ensurePartitions(conn);
+        partitions = layout;
+    }
+
+    /**
+     * Rebuilds {@code user_data} into the month-partitioned layout. Saves on this server switch
+     * to the partitioned write path first, which works on either layout, so saves made while
+     * the table is rebuilt cannot leave a player with two rows. Other servers only pick up the
+     * new layout when they restart.
+     *
+     * @return false if partitioning is not supported or the table is already partitioned
+     */
+    public CompletableFuture<Boolean> convertToPartitions() {
+        return CompletableFuture.supplyAsync(() -> {
+            UserDataPartitions layout;
+            synchronized (this) {
+                if (!backend.supportsPartitioning() || partitions != null) {
+                    return false;
+                }
+                layout = new UserDataPartitions(tablePrefix + "user_data");
+                partitions = layout;
+            }
+            try (Connection conn = getConnection()) {
+                if (!layout.isPartitioned(conn)) {
+                    plugin.getLogger().info("Partitioning " + tablePrefix + "user_data by activity month - this rebuilds the table once");
+                    layout.convert(conn);
+                }
+                layout.ensurePartitions(conn);
+            } catch (SQLException e) {
+                partitions = null;
+                plugin.getLogger().log(Level.SEVERE, "Failed to partition " + tablePrefix + "user_data", e);
+                throw new IllegalStateException("Failed to partition " + tablePrefix + "user_data: " + e.getMessage(), e);
+            }
+
+            plugin.getLogger().info("Partitioned " + tablePrefix + "user_data - the other servers switch to it on their own");
+            startPartitionMaintenance();
+            return true;
+        });
+    }
+
+    /**
+     * Creates the partitions for the coming months ahead of time.
+     */
+    public void startPartitionMaintenance() {
+        if (partitions == null) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            try (Connection conn = getConnection()) {
+                partitions.ensurePartitions(conn);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to create the partitions for the coming months", e);
+            }
+        }, PARTITION_MAINTENANCE_INTERVAL_TICKS, PARTITION_MAINTENANCE_INTERVAL_TICKS);
+    }
+
+    /**
+     * Makes {@code (player_uuid, version)} unique in the history, so two servers cannot both
+     * store the same version of a player. Tables created before that keep the first copy of
+     * any version that was stored twice.
+     */
+    private void ensureUniqueHistoryVersions(Connection conn) throws SQLException {
+        String table = tablePrefix + "user_data_history";
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, true, false)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                if (indexName != null && indexName.endsWith("uq_player_version")) {
+                    return;
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            int removed = stmt.executeUpdate(String.format("DELETE FROM %1$s WHERE id NOT IN "
+                + "(SELECT id FROM (SELECT MIN(id) AS id FROM %1$s GROUP BY player_uuid, version) AS kept)", table));
+            stmt.execute(backend.addUniqueIndex(table, "uq_player_version (player_uuid, version)"));
+            if (removed > 0) {
+                plugin.getLogger().warning(String.format("Removed %d duplicate history versions from %s", removed, table));
+            }
+        }
+    }
+
+    /**
+     * Adds a column (and optionally an index on it) to a table created by an older version.
+     *
+     * @return whether the column was added
+     */
+    private boolean ensureColumn(Connection conn, String table, String column, String definition, String index) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return false;
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s", table, column, definition));
+            if (index != null) {
+                stmt.execute(backend.addIndex(table, index));
+            }
+        }
+
+        plugin.getLogger().info(String.format("Added column %s to %s", column, table));
+        return true;
+    }
+
+    private void registerPoolGauges() {
+        metrics.registerGauge("pool_active_connections", "Connections currently in use",
+            () -> poolStat(HikariPoolMXBean::getActiveConnections));
+        metrics.registerGauge("pool_idle_connections", "Idle connections in the pool",
+            () -> poolStat(HikariPoolMXBean::getIdleConnections));
+        metrics.registerGauge("pool_pending_threads", "Threads waiting for a connection",
+            () -> poolStat(HikariPoolMXBean::getThreadsAwaitingConnection));
+        metrics.registerGauge("pool_total_connections", "Total connections in the pool",
+            () -> poolStat(HikariPoolMXBean::getTotalConnections));
+        if (replicaDataSource != null) {
+            metrics.registerGauge("replica_pool_active_connections", "Replica connections currently in use",
+                () -> poolStat(replicaDataSource, HikariPoolMXBean::getActiveConnections));
+            metrics.registerGauge("replica_pool_pending_threads", "Threads waiting for a replica connection",
+                () -> poolStat(replicaDataSource, HikariPoolMXBean::getThreadsAwaitingConnection));
+        }
+        metrics.registerGauge("indexed_player_names", "Player names held in the tab completion index", nameIndex::size);
+        metrics.registerGauge("journal_pending_saves", "Saves spooled locally while the database was unreachable",
+            this::getSpooledSaves);
+        metrics.registerGauge("async_queue_depth", "Tasks queued on the shared async executor",
+            () -> ForkJoinPool.commonPool().getQueuedSubmissionCount() + ForkJoinPool.commonPool().getQueuedTaskCount());
+    }
+
+    private long poolStat(ToIntFunction<HikariPoolMXBean> stat) {
+        return poolStat(dataSource, stat);
+    }
+
+    private long poolStat(HikariDataSource current, ToIntFunction<HikariPoolMXBean> stat) {
+        if (current == null || current.isClosed() || current.getHikariPoolMXBean() == null) {
+            return 0;
+        }
+        return stat.applyAsInt(current.getHikariPoolMXBean());
+    }
+
+    public Connection getConnection() throws SQLException {
+        HikariDataSource current = dataSource;
+        if (current == null || current.isClosed()) {
+            throw new SQLException("DataSource is not initialized or has been closed");
+        }
+
+        long start = metrics.start();
+        try {
+            return current.getConnection();
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.POOL_WAIT);
+            throw e;
+        } finally {
+            metrics.record(Phase.POOL_WAIT, start);
+        }
+    }
+
+    /**
+     * Connection for read-mostly queries that tolerate replication lag. Falls back to the primary
+     * when no replica is configured.
+     */
+    public Connection getReadConnection() throws SQLException {
+        HikariDataSource replica = replicaDataSource;
+        if (replica == null || replica.isClosed()) {
+            return getConnection();
+        }
+
+        long start = metrics.start();
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.POOL_WAIT);
+            throw e;
+        } finally {
+            metrics.record(Phase.POOL_WAIT, start);
+        }
+    }
+
+    /**
+     * Connection for reading one player's data. Stays on the primary while a write from this server
+     * for that player is inside the read-your-writes window, so a load right after a save never
+     * sees a lagging replica.
+     */
+    private Connection getPlayerReadConnection(UUID playerUuid) throws SQLException {
+        if (!routePlayerLoads || replicaDataSource == null) {
+            return getConnection();
+        }
+
+        Long written = recentWrites.get(playerUuid);
+        if (written != null) {
+            if (System.currentTimeMillis() - written < readYourWritesWindowMillis) {
+                return getConnection();
+            }
+            recentWrites.remove(playerUuid, written);
+        }
+        return getReadConnection();
+    }
+
+    /**
+     * What changed about a player in a write.
+     */
+    public enum WriteKind {
+        /** Their userdata was saved or restored. */
+        USER_DATA,
+        /** Their cached balance changed. */
+        BALANCE,
+        /** Their row left {@code user_data}, deleted or archived. */
+        DELETED
+    }
+
+    @FunctionalInterface
+    public interface WriteListener {
+        void onWrite(UUID playerUuid, WriteKind kind);
+    }
+
+    /**
+     * Registers a callback run, on the writing thread, after a player's stored data or
+     * cached balance changed through this server.
+     */
+    public void addWriteListener(WriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    private void notifyWrite(UUID playerUuid, WriteKind kind) {
+        for (WriteListener listener : writeListeners) {
+            try {
+                listener.onWrite(playerUuid, kind);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "A write listener failed for " + playerUuid, e);
+            }
+        }
+    }
+
+    private void markWritten(UUID playerUuid) {
+        if (replicaDataSource == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        recentWrites.put(playerUuid, now);
+        if (recentWrites.size() > 1024) {
+            recentWrites.values().removeIf(written -> now - written >= readYourWritesWindowMillis);
+        }
+    }
+
+    public CompletableFuture<Boolean> saveUserData(UUID playerUuid, String playerName, String data, UserDataSummary summary) {
+        return CompletableFuture.supplyAsync(() -> {
+            // a player with spooled saves keeps spooling until they are replayed, so their saves reach the database in order
+            if (saveJournal != null && (saveJournal.hasPending(playerUuid) || !circuitBreaker.allowRequest())) {
+                return spool(playerUuid, playerName, data, summary);
+            }
+
+            long start = metrics.start();
+            boolean deduplicate = plugin.getSettings().isDeduplicateData();
+            try (Connection conn = getConnection()) {
+
+                int rowsAffected = deduplicate ? 0 : updateInPlace(conn, playerUuid, playerName, data, summary);
+                if (rowsAffected > 0) {
+                    knownVersions.computeIfPresent(playerUuid, (uuid, version) -> version + 1);
+                } else {
+                    conn.setAutoCommit(false);
+                    try {
+                        long version = writeUserData(conn, playerUuid, playerName, data, summary, deduplicate);
+                        conn.commit();
+                        rememberVersion(playerUuid, version);
+                        rowsAffected = 1;
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(true);
+                    }
+                }
+                markWritten(playerUuid);
+                nameIndex.put(playerUuid, playerName);
+                recordHistory(playerUuid, data);
+                notifyWrite(playerUuid, WriteKind.USER_DATA);
+                circuitBreaker.recordSuccess();
+
+                if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                    plugin.getLogger().info(String.format("Saved data for player %s (%s), rows affected: %d", 
+                                                        playerName, playerUuid, rowsAffected));
+                }
+
+                return rowsAffected > 0;
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                if (saveJournal != null && isConnectionFailure(e)) {
+                    if (circuitBreaker.recordFailure()) {
+                        plugin.getLogger().warning("Database unreachable - spooling saves to the local journal");
+                    }
+                    return spool(playerUuid, playerName, data, summary);
+                }
+
+                circuitBreaker.recordSuccess();
+                plugin.getLogger().log(Level.SEVERE, 
+                    String.format("Failed to save data for player %s (%s)", playerName, playerUuid), e);
+                return false;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+        });
+    }
+
+    private boolean spool(UUID playerUuid, String playerName, String data, UserDataSummary summary) {
+        // a save queued behind earlier spooled ones continues from the same base version
+        SaveJournal.Entry pending = saveJournal.getLatest(playerUuid);
+        long baseVersion = pending != null ? pending.getBaseVersion() : knownVersions.getOrDefault(playerUuid, UNKNOWN_VERSION);
+        try {
+            saveJournal.append(new SaveJournal.Entry(playerUuid, playerName, data, summary, baseVersion));
+            nameIndex.put(playerUuid, playerName);
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Spooled save for player %s (%s) to the local journal", playerName, playerUuid));
+            }
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE,
+                String.format("Failed to spool save for player %s (%s)", playerName, playerUuid), e);
+            return false;
+        }
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientConnectionException
+            || e instanceof SQLNonTransientConnectionException
+            || e instanceof SQLRecoverableException
+            || (state != null && state.startsWith("08"));
+    }
+
+    private record ReplayedChain(long baseVersion, long version, boolean conflicted) {
+    }
+
+    /**
+     * Writes spooled saves to the database oldest first, keeping only the newest save per
+     * player, one transaction per player. A save is only written if the row still has the
+     * {@code data_version} it was based on; if another server saved the player in the
+     * meantime, or the write fails for a reason other than the connection, the save is moved
+     * to the journal's failed-records file and the rest carry on. Does nothing while the
+     * circuit breaker is open; a lost connection keeps what is left for the next run.
+     */
+    public void replayJournal() {
+        if (saveJournal == null || !saveJournal.hasPending() || !circuitBreaker.allowRequest()) {
+            return;
+        }
+
+        List<SaveJournal.Entry> entries;
+        try {
+            entries = saveJournal.beginReplay();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to read the local save journal", e);
+            circuitBreaker.recordSuccess();
+            return;
+        }
+
+        Map<UUID, SaveJournal.Entry> newest = new LinkedHashMap<>();
+        for (SaveJournal.Entry entry : entries) {
+            newest.remove(entry.getPlayerUuid());
+            newest.put(entry.getPlayerUuid(), entry);
+        }
+
+        Set<UUID> settled = new HashSet<>();
+        int replayed = 0;
+        long start = metrics.start();
+        try (Connection conn = getConnection()) {
+            boolean deduplicate = plugin.getSettings().isDeduplicateData();
+            conn.setAutoCommit(false);
+            try {
+                for (SaveJournal.Entry entry : newest.values()) {
+                    UUID playerUuid = entry.getPlayerUuid();
+                    long version;
+                    try {
+                        version = replayEntry(conn, entry, deduplicate);
+                        conn.commit();
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        if (isConnectionFailure(e)) {
+                            throw e;
+                        }
+                        if (quarantine(entry, "it failed with " + e.getMessage())) {
+                            settled.add(playerUuid);
+                        }
+                        continue;
+                    }
+
+                    if (version == UNKNOWN_VERSION) {
+                        if (quarantine(entry, "the player was saved by another server after it was spooled")) {
+                            settled.add(playerUuid);
+                        }
+                        continue;
+                    }
+
+                    replayedChains.put(playerUuid, new ReplayedChain(entry.getBaseVersion(), version, false));
+                    rememberVersion(playerUuid, version);
+                    markWritten(playerUuid);
+                    nameIndex.put(playerUuid, entry.getPlayerName());
+                    recordHistory(playerUuid, entry.getData());
+                    notifyWrite(playerUuid, WriteKind.USER_DATA);
+                    settled.add(playerUuid);
+                    replayed++;
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            circuitBreaker.recordSuccess();
+
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            if (isConnectionFailure(e)) {
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+                plugin.getLogger().log(Level.SEVERE, "Failed to replay the local save journal", e);
+            }
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+
+        List<SaveJournal.Entry> remaining = new ArrayList<>();
+        for (SaveJournal.Entry entry : entries) {
+            if (!settled.contains(entry.getPlayerUuid())) {
+                remaining.add(entry);
+            }
+        }
+        try {
+            saveJournal.finishReplay(settled, remaining);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Replayed the local save journal but failed to update it", e);
+        }
+        for (UUID playerUuid : settled) {
+            if (!saveJournal.hasPending(playerUuid)) {
+                replayedChains.remove(playerUuid);
+            }
+        }
+
+        if (replayed > 0) {
+            plugin.getLogger().info(String.format("Replayed spooled saves for %d players from the local journal", replayed));
+        }
+    }
+
+    /**
+     * Writes one spooled save inside the caller's transaction.
+     *
+     * @return the row's new {@code data_version}, or {@link #UNKNOWN_VERSION} if the row moved
+     *     on since the save was spooled and nothing was written
+     */
+    private long replayEntry(Connection conn, SaveJournal.Entry entry, boolean deduplicate) throws SQLException {
+        UUID playerUuid = entry.getPlayerUuid();
+        long expected = entry.getBaseVersion();
+
+        // saves spooled behind ones replayed earlier share their base version and continue from what that replay wrote
+        ReplayedChain chain = replayedChains.get(playerUuid);
+        if (chain != null && chain.baseVersion() == expected && expected != UNKNOWN_VERSION) {
+            if (chain.conflicted()) {
+                return UNKNOWN_VERSION;
+            }
+            expected = chain.version();
+        }
+
+        LockedRow current = lockRow(conn, playerUuid);
+        if (expected != UNKNOWN_VERSION && current.dataVersion() != expected) {
+            replayedChains.put(playerUuid, new ReplayedChain(entry.getBaseVersion(), current.dataVersion(), true));
+            knownVersions.put(playerUuid, current.dataVersion());
+            return UNKNOWN_VERSION;
+        }
+
+        return writeUserData(conn, playerUuid, entry.getPlayerName(), entry.getData(), entry.getSummary(), deduplicate, current);
+    }
+
+    private boolean quarantine(SaveJournal.Entry entry, String reason) {
+        try {
+            saveJournal.quarantine(entry);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, String.format("Failed to set aside the spooled save for player %s (%s) - keeping it in the journal",
+                entry.getPlayerName(), entry.getPlayerUuid()), e);
+            return false;
+        }
+        plugin.getLogger().warning(String.format("Moved the spooled save for player %s (%s) to %s because %s",
+            entry.getPlayerName(), entry.getPlayerUuid(), saveJournal.getFailedFile().getFileName(), reason));
+        return true;
+    }
+
+    private void rememberVersion(UUID playerUuid, long version) {
+        if (knownVersions.size() >= MAX_KNOWN_VERSIONS && !knownVersions.containsKey(playerUuid)) {
+            knownVersions.clear();
+        }
+        knownVersions.put(playerUuid, version);
+    }
+
+    public void startJournalReplay() {
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::replayJournal,
+            JOURNAL_REPLAY_INTERVAL_TICKS, JOURNAL_REPLAY_INTERVAL_TICKS);
+    }
+
+    private void recordHistory(UUID playerUuid, String data) {
+        HistoryManager history = plugin.getHistoryManager();
+        if (history != null) {
+            history.record(playerUuid, data);
+        }
+    }
+
+    private void bindSave(PreparedStatement stmt, UUID playerUuid, String playerName, String data, UserDataSummary summary,
+                          String blobHash) throws SQLException {
+        stmt.setString(1, playerUuid.toString());
+        stmt.setString(2, playerName);
+        stmt.setString(3, data);
+        bindSummary(stmt, 4, summary);
+        stmt.setLong(9, 1);
+        stmt.setInt(10, UserDataCodec.CURRENT_FORMAT_VERSION);
+        stmt.setString(11, blobHash);
+        stmt.setInt(12, UserDataPartitions.currentMonth());
+    }
+
+    /**
+     * Saves without deduplication in one statement when that needs nothing else: the row
+     * exists, holds its data inline and was saved this month already. Decided from the row
+     * itself, so a blob another server stored for the player is still released and a row of
+     * another month is still moved, by the transactional save this falls back to.
+     *
+     * @return 0 if the transactional save is needed
+     */
+    private int updateInPlace(Connection conn, UUID playerUuid, String playerName, String data, UserDataSummary summary) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(updateUserDataInPlaceSql)) {
+            stmt.setString(1, playerName);
+            stmt.setString(2, data);
+            bindSummary(stmt, 3, summary);
+            stmt.setInt(8, UserDataCodec.CURRENT_FORMAT_VERSION);
+            stmt.setString(9, playerUuid.toString());
+            stmt.setInt(10, UserDataPartitions.currentMonth());
+            return stmt.executeUpdate();
+        }
+    }
+
+    private long writeUserData(Connection conn, UUID playerUuid, String playerName, String data, UserDataSummary summary,
+                               boolean deduplicate) throws SQLException {
+        return writeUserData(conn, playerUuid, playerName, data, summary, deduplicate, lockRow(conn, playerUuid));
+    }
+
+    /**
+     * Saves one row inside the caller's transaction, after {@code current} was locked. With
+     * deduplication the payload is stored once in {@code user_data_blobs} under its SHA-256 and
+     * the row only keeps the hash. The blob the row pointed to before loses a reference and is
+     * deleted when nothing uses it. With the partitioned layout the row is first moved into the
+     * current month.
+     *
+     * @return the row's new {@code data_version}
+     */
+    private long writeUserData(Connection conn, UUID playerUuid, String playerName, String data, UserDataSummary summary,
+                               boolean deduplicate, LockedRow current) throws SQLException {
+        int month = UserDataPartitions.currentMonth();
+        if (partitions != null) {
+            // MySQL moves the row to the partition of its new active_month, the upsert below then updates it in place.
+            // Any other month counts, so a row a server with a clock ahead wrote is moved too instead of kept beside a new one.
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(
+                     "UPDATE %suser_data SET active_month = ? WHERE player_uuid = ? AND active_month <> ?", tablePrefix))) {
+                stmt.setInt(1, month);
+                stmt.setString(2, playerUuid.toString());
+                stmt.setInt(3, month);
+                stmt.executeUpdate();
+            }
+        }
+
+        String previousHash = current.blobHash();
+        String hash = deduplicate ? UserDataCodec.sha256(data) : null;
+
+        if (hash != null && !hash.equals(previousHash)) {
+            try (PreparedStatement stmt = conn.prepareStatement(upsertBlobSql)) {
+                stmt.setString(1, hash);
+                stmt.setString(2, data);
+                stmt.setInt(3, 1);
+                stmt.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(saveUserDataSql)) {
+            bindSave(stmt, playerUuid, playerName, hash != null ? "" : data, summary, hash);
+            stmt.setInt(12, month);
+            stmt.executeUpdate();
+        }
+
+        if (previousHash != null && !previousHash.equals(hash)) {
+            releaseBlob(conn, previousHash);
+        }
+        // a new row starts at 1, which bindSave writes
+        return current.dataVersion() + 1;
+    }
+
+    private record LockedRow(String blobHash, long dataVersion) {
+    }
+
+    /**
+     * Locks a player's row for the rest of the transaction. A missing row reads as version 0.
+     * On the partitioned layout the player's key row is locked first, so two saves of the same
+     * player are serialized even where no row exists yet or it sits in another month.
+     * <p>
+     * A row of another month is the one case where saving with the wrong layout in mind goes
+     * wrong, since the upsert would add a second row next to it once the table is partitioned.
+     * So while this server does not know of partitions, such a row makes it check whether
+     * another server converted the table in the meantime.
+     */
+    private LockedRow lockRow(Connection conn, UUID playerUuid) throws SQLException {
+        if (partitions != null) {
+            lockPlayerKey(conn, playerUuid);
+        }
+
+        String sql = String.format("SELECT blob_hash, data_version, active_month FROM %suser_data WHERE player_uuid = ?%s",
+            tablePrefix, backend.forUpdate());
+        LockedRow row = new LockedRow(null, 0);
+        int month = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    row = new LockedRow(rs.getString("blob_hash"), rs.getLong("data_version"));
+                    month = rs.getInt("active_month");
+                }
+            }
+        }
+
+        if (partitions == null && month != 0 && month != UserDataPartitions.currentMonth() && detectPartitions(conn)) {
+            lockPlayerKey(conn, playerUuid);
+        }
+        return row;
+    }
+
+    private void lockPlayerKey(Connection conn, UUID playerUuid) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(lockPlayerKeySql)) {
+            stmt.setString(1, playerUuid.toString());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Switches to the partitioned layout if another server converted the table since this one
+     * started.
+     *
+     * @return whether the table turned out to be partitioned
+     */
+    private boolean detectPartitions(Connection conn) throws SQLException {
+        if (!backend.supportsPartitioning()) {
+            return false;
+        }
+
+        UserDataPartitions layout = new UserDataPartitions(tablePrefix + "user_data");
+        if (!layout.isPartitioned(conn)) {
+            return false;
+        }
+        synchronized (this) {
+            if (partitions != null) {
+                return true;
+            }
+            partitions = layout;
+        }
+
+        plugin.getLogger().info("Another server partitioned " + tablePrefix + "user_data - switching to the partitioned layout");
+        startPartitionMaintenance();
+        return true;
+    }
+
+    private String lockBlobHash(Connection conn, UUID playerUuid) throws SQLException {
+        String sql = String.format("SELECT blob_hash FROM %suser_data WHERE player_uuid = ?%s", tablePrefix, backend.forUpdate());
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("blob_hash") : null;
+            }
+        }
+    }
+
+    private void releaseBlob(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement release = conn.prepareStatement(String.format(
+                 "UPDATE %suser_data_blobs SET ref_count = ref_count - 1 WHERE hash = ?", tablePrefix));
+             PreparedStatement delete = conn.prepareStatement(String.format(
+                 "DELETE FROM %suser_data_blobs WHERE hash = ? AND ref_count <= 0", tablePrefix))) {
+            release.setString(1, hash);
+            release.executeUpdate();
+            delete.setString(1, hash);
+            delete.executeUpdate();
+        }
+    }
+
+    private void bindSummary(PreparedStatement stmt, int index, UserDataSummary summary) throws SQLException {
+        stmt.setString(index, summary.getLastAccountName());
+        stmt.setBigDecimal(index + 1, summary.getMoney());
+        stmt.setString(index + 2, summary.getNickname());
+        if (summary.getLogoutTime() != null) {
+            stmt.setLong(index + 3, summary.getLogoutTime());
+        } else {
+            stmt.setNull(index + 3, Types.BIGINT);
+        }
+        stmt.setBoolean(index + 4, summary.isJailed());
+    }
+
+    public CompletableFuture<String> getUserData(UUID playerUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            SaveJournal.Entry spooled = saveJournal != null ? saveJournal.getLatest(playerUuid) : null;
+            if (spooled != null) {
+                return spooled.getData();
+            }
+
+            long start = metrics.start();
+            String sql = String.format("SELECT COALESCE(b.data, u.data) AS data, u.data_version FROM %suser_data u "
+                + "LEFT JOIN %suser_data_blobs b ON b.hash = u.blob_hash WHERE u.player_uuid = ?", tablePrefix, tablePrefix);
+
+            try (Connection conn = getPlayerReadConnection(playerUuid);
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setString(1, playerUuid.toString());
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        String data = rs.getString("data");
+                        rememberVersion(playerUuid, rs.getLong("data_version"));
+
+                        if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                            plugin.getLogger().info(String.format("Loaded data for player %s", playerUuid));
+                        }
+
+                        return data;
+                    }
+                }
+                rememberVersion(playerUuid, 0);
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, 
+                    String.format("Failed to load data for player %s", playerUuid), e);
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Moves an archived player back into {@code user_data} and returns their data in the
+     * stored form, or null if they are not archived. Called when a load finds no row, which
+     * is rare enough that the archive is always looked up, since another server may have
+     * archived the player.
+     */
+    public CompletableFuture<String> restoreArchivedUserData(UUID playerUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            String selectSql = String.format("SELECT player_name, data FROM %suser_data_archive WHERE player_uuid = ?%s",
+                tablePrefix, backend.forUpdate());
+            String deleteSql = String.format("DELETE FROM %suser_data_archive WHERE player_uuid = ?", tablePrefix);
+
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    String playerName;
+                    byte[] archived;
+                    try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                        stmt.setString(1, playerUuid.toString());
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (!rs.next()) {
+                                conn.commit();
+                                return null;
+                            }
+                            playerName = rs.getString("player_name");
+                            archived = rs.getBytes("data");
+                        }
+                    }
+
+                    String yaml = UserDataCodec.decompressArchive(archived);
+                    String data = plugin.getSettings().isCompressData() ? UserDataCodec.compress(yaml) : yaml;
+                    long version = writeUserData(conn, playerUuid, playerName, data, UserDataSummary.extract(yaml), plugin.getSettings().isDeduplicateData());
+
+                    try (PreparedStatement stmt = conn.prepareStatement(deleteSql)) {
+                        stmt.setString(1, playerUuid.toString());
+                        stmt.executeUpdate();
+                    }
+
+                    conn.commit();
+                    rememberVersion(playerUuid, version);
+                    markWritten(playerUuid);
+                    nameIndex.put(playerUuid, playerName);
+                    notifyWrite(playerUuid, WriteKind.USER_DATA);
+                    plugin.getLogger().info(String.format("Restored archived data for player %s (%s)", playerName, playerUuid));
+                    return data;
+                } catch (SQLException | IOException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException | IOException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, String.format("Failed to restore archived data for player %s", playerUuid), e);
+                return null;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+        });
+    }
+
+    /**
+     * Moves up to {@code limit} players inactive for more than {@code daysInactive} days, with
+     * an id above {@code afterId}, from {@code user_data} into the compressed archive table in
+     * one transaction. A row saved after it was read stays where it is. Runs on the calling thread.
+     */
+    public ArchiveChunk archiveInactiveChunk(int daysInactive, long afterId, int limit) throws SQLException {
+        long start = metrics.start();
+        String selectSql = String.format("SELECT u.id, u.player_uuid, u.player_name, COALESCE(b.data, u.data) AS data, "
+            + "u.blob_hash, u.data_version, u.last_login FROM %1$suser_data u "
+            + "LEFT JOIN %1$suser_data_blobs b ON b.hash = u.blob_hash "
+            + "WHERE u.id > ? AND %2$s ORDER BY u.id LIMIT ?", tablePrefix, backend.olderThanDays("u.last_login"));
+        String deleteSql = String.format("DELETE FROM %suser_data WHERE id = ? AND data_version = ?", tablePrefix);
+
+        try (Connection conn = getConnection()) {
+            int fetched = 0;
+            long lastId = afterId;
+            List<ArchiveCandidate> rows = new ArrayList<>();
+
+            try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                stmt.setLong(1, afterId);
+                stmt.setInt(2, daysInactive);
+                stmt.setInt(3, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched++;
+                        lastId = rs.getLong("id");
+                        String stored = rs.getString("data");
+                        try {
+                            String yaml = UserDataCodec.isCompressed(stored) ? UserDataCodec.decompress(stored) : stored;
+                            rows.add(new ArchiveCandidate(lastId, rs.getLong("data_version"), UUID.fromString(rs.getString("player_uuid")),
+                                rs.getString("player_name"), UserDataCodec.compressArchive(yaml), rs.getTimestamp("last_login"),
+                                rs.getString("blob_hash")));
+                        } catch (IOException | IllegalArgumentException e) {
+                            plugin.getLogger().warning("Not archiving unreadable data for " + rs.getString("player_uuid") + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+
+            int archived = 0;
+            List<UUID> moved = new ArrayList<>();
+            conn.setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement(deleteSql);
+                 PreparedStatement insert = conn.prepareStatement(upsertArchiveSql)) {
+                for (ArchiveCandidate row : rows) {
+                    delete.setLong(1, row.id);
+                    delete.setLong(2, row.dataVersion);
+                    if (delete.executeUpdate() == 0) {
+                        continue; // saved since it was read
+                    }
+
+                    insert.setString(1, row.uuid.toString());
+                    insert.setString(2, row.name);
+                    insert.setBytes(3, row.archived);
+                    insert.setTimestamp(4, row.lastLogin);
+                    insert.executeUpdate();
+
+                    if (row.blobHash != null) {
+                        releaseBlob(conn, row.blobHash);
+                    }
+                    moved.add(row.uuid);
+                    archived++;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            if (archived > 0) {
+                moved.forEach(nameIndex::remove);
+                moved.forEach(uuid -> notifyWrite(uuid, WriteKind.DELETED));
+            }
+            return new ArchiveChunk(fetched, archived, lastId);
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
+
+    public CompletableFuture<Boolean> deleteUserData(UUID playerUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            String sql = String.format("DELETE FROM %suser_data WHERE player_uuid = ?", tablePrefix);
+
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                int rowsAffected;
+                conn.setAutoCommit(false);
+                try {
+                    String blobHash = lockBlobHash(conn, playerUuid);
+                    stmt.setString(1, playerUuid.toString());
+                    rowsAffected = stmt.executeUpdate();
+                    if (blobHash != null) {
+                        releaseBlob(conn, blobHash);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                markWritten(playerUuid);
+                nameIndex.remove(playerUuid);
+                notifyWrite(playerUuid, WriteKind.DELETED);
+
+                return rowsAffected > 0;
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, 
+                    String.format("Failed to delete data for player %s", playerUuid), e);
+                return false;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+        });
+    }
+
+    /**
+     * Fills the player name index from {@code user_data}. Only the name and UUID
+     * columns are read, never the data itself.
+     */
+    public CompletableFuture<Integer> loadNameIndex() {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            Map<UUID, String> names = new HashMap<>();
+            String sql = String.format("SELECT player_uuid, player_name FROM %suser_data", tablePrefix);
+
+            try (Connection conn = getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setFetchSize(1000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        names.put(UUID.fromString(rs.getString("player_uuid")), rs.getString("player_name"));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, "Failed to load the player name index", e);
+                return 0;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+
+            nameIndex.load(names);
+            return names.size();
+        });
+    }
+
+    /**
+     * Keeps the name index in step with a write another server announced: deleted players are
+     * dropped and players saved there for the first time are looked up once.
+     */
+    public void applyRemoteWrite(UUID playerUuid, WriteKind kind) {
+        if (kind == WriteKind.DELETED) {
+            nameIndex.remove(playerUuid);
+            return;
+        }
+        if (kind != WriteKind.USER_DATA || nameIndex.contains(playerUuid)) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                PlayerProfile profile = getPlayerProfiles(List.of(playerUuid)).get(playerUuid);
+                if (profile != null) {
+                    nameIndex.put(playerUuid, profile.getName());
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to index the name of " + playerUuid, e);
+            }
+        });
+    }
+
+    public CompletableFuture<List<PlayerData>> getAllUserData() {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            List<PlayerData> players = new ArrayList<>();
+            String sql = String.format("SELECT u.player_uuid, u.player_name, COALESCE(b.data, u.data) AS data, u.last_login "
+                + "FROM %suser_data u LEFT JOIN %suser_data_blobs b ON b.hash = u.blob_hash", tablePrefix, tablePrefix);
+
+            try (Connection conn = getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    PlayerData playerData = new PlayerData(
+                        UUID.fromString(rs.getString("player_uuid")),
+                        rs.getString("player_name"),
+                        rs.getString("data"),
+                        rs.getTimestamp("last_login")
+                    );
+                    players.add(playerData);
+                }
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, "Failed to load all user data", e);
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+
+            return players;
+        });
+    }
+
+    public CompletableFuture<Integer> cleanupInactiveUsers(int daysInactive) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (partitions != null) {
+                return dropInactivePartitions(daysInactive);
+            }
+
+            long start = metrics.start();
+            String older = backend.olderThanDays("last_login");
+            String sql = String.format("DELETE FROM %suser_data WHERE %s", tablePrefix, older);
+
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                int rowsAffected;
+                List<UUID> removed = new ArrayList<>();
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement select = conn.prepareStatement(String.format("SELECT player_uuid FROM %suser_data WHERE %s%s",
+                             tablePrefix, older, backend.forUpdate()))) {
+                        select.setInt(1, daysInactive);
+                        try (ResultSet rs = select.executeQuery()) {
+                            while (rs.next()) {
+                                removed.add(UUID.fromString(rs.getString("player_uuid")));
+                            }
+                        }
+                    }
+
+                    boolean blobs = hasBlobs(conn);
+                    if (blobs) {
+                        releaseInactiveBlobs(conn, daysInactive);
+                    }
+                    stmt.setInt(1, daysInactive);
+                    rowsAffected = stmt.executeUpdate();
+                    if (blobs) {
+                        deleteUnreferencedBlobs(conn);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+
+                forgetRemovedPlayers(removed);
+                plugin.getLogger().info(String.format("Cleanup completed: removed %d inactive players", rowsAffected));
+                return rowsAffected;
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, "Failed to cleanup inactive users", e);
+                return 0;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+        });
+    }
+
+    /**
+     * Cleanup for the partitioned layout: drops the months that lie completely before the
+     * cutoff, so players are kept up to a month longer than {@code daysInactive}.
+     */
+    private int dropInactivePartitions(int daysInactive) {
+        long start = metrics.start();
+        int cutoffMonth = UserDataPartitions.monthOf(LocalDate.now().minusDays(daysInactive));
+
+        try (Connection conn = getConnection()) {
+            partitions.ensurePartitions(conn);
+            List<UUID> removed = partitions.dropBefore(conn, cutoffMonth);
+            int rowsRemoved = removed.size();
+            forgetRemovedPlayers(removed);
+
+            if (rowsRemoved > 0 && hasBlobs(conn)) {
+                // dropped rows never released their blobs, so recount the references that are left
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate(String.format("UPDATE %1$suser_data_blobs SET ref_count = "
+                        + "(SELECT COUNT(*) FROM %1$suser_data u WHERE u.blob_hash = %1$suser_data_blobs.hash)", tablePrefix));
+                }
+                deleteUnreferencedBlobs(conn);
+            }
+
+            plugin.getLogger().info(String.format("Cleanup completed: dropped partitions before %d with %d inactive players",
+                cutoffMonth, rowsRemoved));
+            return rowsRemoved;
+
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            plugin.getLogger().log(Level.SEVERE, "Failed to drop inactive user partitions", e);
+            return 0;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
+
+    /**
+     * Drops players a cleanup removed from the name index and tells the other servers, like
+     * {@link #deleteUserData} does for a single player.
+     */
+    private void forgetRemovedPlayers(List<UUID> removed) {
+        for (UUID uuid : removed) {
+            nameIndex.remove(uuid);
+            notifyWrite(uuid, WriteKind.DELETED);
+        }
+    }
+
+    /**
+     * Whether any server stored a deduplicated blob, looked up instead of remembered, since
+     * another server may have started deduplicating after this one started.
+     */
+    private boolean hasBlobs(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(String.format("SELECT 1 FROM %suser_data_blobs LIMIT 1", tablePrefix))) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Takes the references held by the rows {@link #cleanupInactiveUsers} is about to delete,
+     * in one statement instead of one release per player.
+     */
+    private void releaseInactiveBlobs(Connection conn, int daysInactive) throws SQLException {
+        String older = backend.olderThanDays("u.last_login");
+        String sql = String.format("UPDATE %1$suser_data_blobs SET ref_count = ref_count - "
+            + "(SELECT COUNT(*) FROM %1$suser_data u WHERE u.blob_hash = %1$suser_data_blobs.hash AND %2$s) "
+            + "WHERE hash IN (SELECT u.blob_hash FROM %1$suser_data u WHERE u.blob_hash IS NOT NULL AND %2$s)",
+            tablePrefix, older);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, daysInactive);
+            stmt.setInt(2, daysInactive);
+            stmt.executeUpdate();
+        }
+    }
+
+    private int deleteUnreferencedBlobs(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(String.format(
+                 "DELETE FROM %suser_data_blobs WHERE ref_count <= 0", tablePrefix))) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Loads the cached balance of a joining player, or null if there is none. Offline balance
+     * changes not added to it yet are added now, and all of them are marked delivered, since the
+     * balance the player is given includes them. Without a cached balance they are left for the
+     * first balance this server writes for the player.
+     */
+    public CompletableFuture<Double> loadBalance(UUID playerUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            String selectSql = String.format("SELECT balance FROM %sbalance_cache WHERE player_uuid = ?%s", tablePrefix, backend.forUpdate());
+            String addSql = String.format("UPDATE %sbalance_cache SET balance = balance + ?, last_updated = CURRENT_TIMESTAMP "
+                + "WHERE player_uuid = ?", tablePrefix);
+
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    // deltas before the cached balance, the order the other balance writes lock in
+                    BigDecimal unapplied = claimUndeliveredDeltas(conn, List.of(playerUuid), true).getOrDefault(playerUuid, BigDecimal.ZERO);
+                    BigDecimal balance = null;
+                    try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                        stmt.setString(1, playerUuid.toString());
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (rs.next()) {
+                                balance = rs.getBigDecimal("balance");
+                            }
+                        }
+                    }
+                    if (balance == null) {
+                        conn.rollback();
+                        return null;
+                    }
+
+                    if (unapplied.signum() != 0) {
+                        try (PreparedStatement stmt = conn.prepareStatement(addSql)) {
+                            stmt.setBigDecimal(1, unapplied);
+                            stmt.setString(2, playerUuid.toString());
+                            stmt.executeUpdate();
+                        }
+                        balance = balance.add(unapplied);
+                    }
+                    conn.commit();
+                    if (unapplied.signum() != 0) {
+                        notifyWrite(playerUuid, WriteKind.BALANCE);
+                    }
+                    return balance.doubleValue();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.WARNING,
+                    String.format("Failed to load balance for player %s", playerUuid), e);
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Name, balance and last seen time of the given players, read {@value #IN_LIST_CHUNK}
+     * players per query with the cached balance joined in. Players without a row are left out.
+     * Runs on the calling thread.
+     */
+    public Map<UUID, PlayerProfile> getPlayerProfiles(Collection<UUID> playerUuids) throws SQLException {
+        List<UUID> remaining = new ArrayList<>(playerUuids);
+        Map<UUID, PlayerProfile> profiles = new HashMap<>(remaining.size() * 2);
+        if (remaining.isEmpty()) {
+            return profiles;
+        }
+
+        long start = metrics.start();
+        try (Connection conn = getReadConnection()) {
+            for (int from = 0; from < remaining.size(); from += IN_LIST_CHUNK) {
+                List<UUID> chunk = remaining.subList(from, Math.min(from + IN_LIST_CHUNK, remaining.size()));
+                String sql = String.format("SELECT u.player_uuid, u.player_name, u.money, u.logout_time, u.last_login, "
+                    + "b.balance FROM %1$suser_data u LEFT JOIN %1$sbalance_cache b ON b.player_uuid = u.player_uuid "
+                    + "WHERE u.player_uuid IN (%2$s)", tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")));
+
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setString(i + 1, chunk.get(i).toString());
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            UUID uuid = UUID.fromString(rs.getString("player_uuid"));
+                            profiles.put(uuid, readProfile(uuid, rs));
+                        }
+                    }
+                }
+            }
+            return profiles;
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
+
+    private static PlayerProfile readProfile(UUID uuid, ResultSet rs) throws SQLException {
+        double cached = rs.getDouble("balance");
+        Double balance = rs.wasNull() ? null : cached;
+        if (balance == null) {
+            BigDecimal money = rs.getBigDecimal("money");
+            balance = money != null ? money.doubleValue() : null;
+        }
+
+        long lastSeen = rs.getLong("logout_time");
+        if (rs.wasNull() || lastSeen <= 0) {
+            Timestamp lastLogin = rs.getTimestamp("last_login");
+            lastSeen = lastLogin != null ? lastLogin.getTime() : 0;
+        }
+        return new PlayerProfile(uuid, rs.getString("player_name"), balance, lastSeen);
+    }
+
+    /**
+     * Writes a player's balance as this server sees it. Offline balance changes the balance
+     * does not include yet are added to the stored value and returned, so a caller holding the
+     * player's live balance can add them there too.
+     *
+     * @return the offline changes added, or null if the write failed
+     */
+    public CompletableFuture<BigDecimal> updateBalanceCache(UUID playerUuid, String playerName, double balance) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<UUID, BigDecimal> added = updateBalanceCaches(List.of(new BalanceEntry(playerUuid, playerName, balance)));
+            return added != null ? added.getOrDefault(playerUuid, BigDecimal.ZERO) : null;
+        });
+    }
+
+    /**
+     * Writes several balance cache rows in one transaction. Like {@link #updateBalanceCache},
+     * offline balance changes not included yet are added to what is written.
+     * Runs on the calling thread; callers are expected to be off the main thread already.
+     *
+     * @return per player, the offline changes added, or null if the write failed
+     */
+    public Map<UUID, BigDecimal> updateBalanceCaches(Collection<BalanceEntry> entries) {
+        return writeBalances(entries, false);
+    }
+
+    /**
+     * Like {@link #updateBalanceCaches}, but only writes the players that have offline balance
+     * changes waiting. Used when another server reports one for a player online here.
+     */
+    public Map<UUID, BigDecimal> settleBalanceDeltas(Collection<BalanceEntry> entries) {
+        return writeBalances(entries, true);
+    }
+
+    private Map<UUID, BigDecimal> writeBalances(Collection<BalanceEntry> entries, boolean onlyWithDeltas) {
+        if (entries.isEmpty()) {
+            return Map.of();
+        }
+
+        long start = metrics.start();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(updateBalanceCacheSql)) {
+                List<UUID> uuids = new ArrayList<>(entries.size());
+                entries.forEach(entry -> uuids.add(entry.getUuid()));
+                Map<UUID, BigDecimal> added = claimUndeliveredDeltas(conn, uuids, false);
+
+                List<UUID> written = new ArrayList<>(entries.size());
+                for (BalanceEntry entry : entries) {
+                    BigDecimal change = added.get(entry.getUuid());
+                    if (onlyWithDeltas && change == null) {
+                        continue;
+                    }
+                    BigDecimal balance = BigDecimal.valueOf(entry.getBalance());
+                    stmt.setString(1, entry.getUuid().toString());
+                    stmt.setString(2, entry.getName());
+                    stmt.setBigDecimal(3, change != null ? balance.add(change) : balance);
+                    stmt.addBatch();
+                    written.add(entry.getUuid());
+                }
+                if (!written.isEmpty()) {
+                    stmt.executeBatch();
+                }
+                conn.commit();
+
+                written.forEach(uuid -> notifyWrite(uuid, WriteKind.BALANCE));
+                return added;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            plugin.getLogger().log(Level.WARNING,
+                String.format("Failed to update balance cache for %d players", entries.size()), e);
+            return null;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
+
+    /**
+     * Locks the offline balance changes of these players that their live balance does not include
+     * yet and marks them applied and delivered, inside the caller's transaction.
+     *
+     * @param unappliedOnly whether to sum only the changes not yet added to the cached balance;
+     *     the ones already added are still marked delivered
+     * @return the summed changes per player that has any
+     */
+    private Map<UUID, BigDecimal> claimUndeliveredDeltas(Connection conn, List<UUID> playerUuids, boolean unappliedOnly) throws SQLException {
+        Map<UUID, BigDecimal> totals = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (int from = 0; from < playerUuids.size(); from += IN_LIST_CHUNK) {
+            List<UUID> chunk = playerUuids.subList(from, Math.min(from + IN_LIST_CHUNK, playerUuids.size()));
+            String sql = String.format("SELECT id, player_uuid, amount, applied FROM %sbalance_deltas "
+                + "WHERE delivered = 0 AND player_uuid IN (%s)%s",
+                tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")), backend.forUpdate());
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i).toString());
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong("id"));
+                        if (!unappliedOnly || !rs.getBoolean("applied")) {
+                            totals.merge(UUID.fromString(rs.getString("player_uuid")), rs.getBigDecimal("amount"), BigDecimal::add);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!ids.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(
+                     "UPDATE %sbalance_deltas SET applied = 1, delivered = 1 WHERE id = ?", tablePrefix))) {
+                for (long id : ids) {
+                    stmt.setLong(1, id);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        totals.values().removeIf(total -> total.signum() == 0);
+        return totals;
+    }
+
+    /**
+     * Records balance changes of offline players and adds them to their cached balance in one
+     * transaction, as {@code balance = balance + ?} so concurrent changes from other servers are
+     * never overwritten. A delta whose key is already stored, because an earlier attempt committed
+     * without this server noticing, is skipped, so failed batches can be retried as they are.
+     * Deltas of players without a cached balance stay unapplied until a server writes one for
+     * them, which then adds them (see {@link #updateBalanceCaches}). Applied deltas stay
+     * undelivered until the player's live balance includes them too.
+     * Runs on the calling thread; callers are expected to be off the main thread already.
+     */
+    public boolean applyBalanceDeltas(Collection<BalanceDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return true;
+        }
+
+        long start = metrics.start();
+        String addSql = String.format("UPDATE %sbalance_cache SET balance = balance + ?, last_updated = CURRENT_TIMESTAMP "
+            + "WHERE player_uuid = ?", tablePrefix);
+        String markSql = String.format("UPDATE %sbalance_deltas SET applied = 1 WHERE id = ?", tablePrefix);
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(insertBalanceDeltaSql)) {
+                    for (BalanceDelta delta : deltas) {
+                        stmt.setString(1, delta.getKey());
+                        stmt.setString(2, delta.getUuid().toString());
+                        stmt.setBigDecimal(3, delta.getAmount());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+
+                // what is still unapplied among these keys is exactly what this transaction inserted
+                List<String> keys = new ArrayList<>(deltas.size());
+                deltas.forEach(delta -> keys.add(delta.getKey()));
+                Map<UUID, List<Long>> ids = new LinkedHashMap<>();
+                Map<UUID, BigDecimal> totals = new LinkedHashMap<>();
+                for (int from = 0; from < keys.size(); from += IN_LIST_CHUNK) {
+                    List<String> chunk = keys.subList(from, Math.min(from + IN_LIST_CHUNK, keys.size()));
+                    String selectSql = String.format("SELECT id, player_uuid, amount FROM %sbalance_deltas "
+                        + "WHERE applied = 0 AND delta_key IN (%s)%s",
+                        tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")), backend.forUpdate());
+                    try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setString(i + 1, chunk.get(i));
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                UUID uuid = UUID.fromString(rs.getString("player_uuid"));
+                                ids.computeIfAbsent(uuid, key -> new ArrayList<>()).add(rs.getLong("id"));
+                                totals.merge(uuid, rs.getBigDecimal("amount"), BigDecimal::add);
+                            }
+                        }
+                    }
+                }
+
+                // batch update counts are not reliable with rewritten batches, so look the rows up
+                totals.keySet().retainAll(lockCachedBalances(conn, totals.keySet()));
+                if (!totals.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(addSql)) {
+                        for (Map.Entry<UUID, BigDecimal> total : totals.entrySet()) {
+                            stmt.setBigDecimal(1, total.getValue());
+                            stmt.setString(2, total.getKey().toString());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+
+                    try (PreparedStatement stmt = conn.prepareStatement(markSql)) {
+                        for (UUID uuid : totals.keySet()) {
+                            for (long id : ids.get(uuid)) {
+                                stmt.setLong(1, id);
+                                stmt.addBatch();
+                            }
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+
+                conn.commit();
+                totals.keySet().forEach(uuid -> notifyWrite(uuid, WriteKind.BALANCE));
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            plugin.getLogger().log(Level.WARNING,
+                String.format("Failed to apply %d balance changes of offline players", deltas.size()), e);
+            return false;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
 
-        this.dataSource = new HikariDataSource(hikariConfig);
+    /**
+     * Locks the cached balances of these players that exist, inside the caller's transaction.
+     *
+     * @return the players that have a cached balance
+     */
+    private Set<UUID> lockCachedBalances(Connection conn, Collection<UUID> playerUuids) throws SQLException {
+        Set<UUID> cached = new HashSet<>();
+        List<UUID> uuids = new ArrayList<>(playerUuids);
+        for (int from = 0; from < uuids.size(); from += IN_LIST_CHUNK) {
+            List<UUID> chunk = uuids.subList(from, Math.min(from + IN_LIST_CHUNK, uuids.size()));
+            String sql = String.format("SELECT player_uuid FROM %sbalance_cache WHERE player_uuid IN (%s)%s",
+                tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")), backend.forUpdate());
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i).toString());
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        cached.add(UUID.fromString(rs.getString("player_uuid")));
+                    }
+                }
+            }
+        }
+        return cached;
     }
 
-    private void createTables() throws SQLException {
-        String userDataTable = String.format("""
-            CREATE TABLE IF NOT EXISTS %suser_data (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                player_uuid VARCHAR(36) NOT NULL UNIQUE,
-                player_name VARCHAR(16) NOT NULL,
-                data LONGTEXT NOT NULL,
-                last_login TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                INDEX idx_player_uuid (player_uuid),
-                INDEX idx_player_name (player_name),
-                INDEX idx_last_login (last_login)
-            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """, tablePrefix);
-
-        String balanceTopTable = String.format("""
-            CREATE TABLE IF NOT EXISTS %sbalance_cache (
-                player_uuid VARCHAR(36) NOT NULL PRIMARY KEY,
-                player_name VARCHAR(16) NOT NULL,
-                balance DECIMAL(20,2) NOT NULL,
-                last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-                INDEX idx_balance (balance DESC),
-                INDEX idx_player_name (player_name)
-            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """, tablePrefix);
-
-        String shopDataTable = String.format("""
-            CREATE TABLE IF NOT EXISTS %sshop_data (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                player_uuid VARCHAR(36) NOT NULL,
-                plugin_name VARCHAR(32) NOT NULL,
-                shop_data TEXT NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                INDEX idx_player_uuid (player_uuid),
-                INDEX idx_plugin_name (plugin_name)
-            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
-            """, tablePrefix);
+    /**
+     * Deletes delivered balance deltas older than {@code days} days. Their keys only guard
+     * against retries, which never come that late.
+     */
+    public CompletableFuture<Integer> pruneBalanceDeltas(int days) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            String sql = String.format("DELETE FROM %sbalance_deltas WHERE delivered = 1 AND %s",
+                tablePrefix, backend.olderThanDays("created_at"));
 
-        try (Connection conn = getConnection()) {
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(userDataTable);
-                stmt.execute(balanceTopTable);
-                stmt.execute(shopDataTable);
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, days);
+                return stmt.executeUpdate();
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.WARNING, "Failed to prune delivered balance deltas", e);
+                return 0;
+            } finally {
+                metrics.record(Phase.QUERY, start);
             }
+        });
+    }
+
+    /**
+     * Appends shop transactions to the ledger in one batched insert.
+     * Runs on the calling thread; callers are expected to be off the main thread already.
+     */
+    public boolean insertShopTransactions(Collection<ShopTransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return true;
         }
 
-        plugin.getLogger().info("Database tables created/verified successfully");
-    }
+        long start = metrics.start();
+        String sql = String.format("INSERT INTO %sshop_transactions "
+            + "(player_uuid, plugin_name, transaction_type, amount, item, quantity, counterparty) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)", tablePrefix);
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (ShopTransaction transaction : transactions) {
+                stmt.setString(1, transaction.getPlayerUuid().toString());
+                stmt.setString(2, transaction.getPluginName());
+                stmt.setString(3, transaction.getType());
+                stmt.setBigDecimal(4, transaction.getAmount());
+                stmt.setString(5, transaction.getItem());
+                stmt.setInt(6, transaction.getQuantity());
+                stmt.setString(7, transaction.getCounterparty());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            return true;
 
-    public Connection getConnection() throws SQLException {
-        if (dataSource == null || dataSource.isClosed()) {
-            throw new SQLException("DataSource is not initialized or has been closed");
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            plugin.getLogger().log(Level.WARNING,
+                String.format("Failed to record %d shop transactions", transactions.size()), e);
+            return false;
+        } finally {
+            metrics.record(Phase.QUERY, start);
         }
-        return dataSource.getConnection();
     }
 
-    public CompletableFuture<Boolean> saveUserData(UUID playerUuid, String playerName, String data) {
+    /**
+     * Every undelivered ledger entry for a player, oldest first. Nothing is marked here; the
+     * caller marks what it actually delivered with {@link #markShopTransactionsDelivered}, so
+     * a player who leaves before delivery gets the entries on their next join.
+     */
+    public CompletableFuture<List<ShopTransaction>> getPendingShopTransactions(UUID playerUuid) {
         return CompletableFuture.supplyAsync(() -> {
-            String sql = String.format("""
-                INSERT INTO %suser_data (player_uuid, player_name, data) 
-                VALUES (?, ?, ?) 
-                ON DUPLICATE KEY UPDATE 
-                player_name = VALUES(player_name), 
-                data = VALUES(data), 
-                last_login = CURRENT_TIMESTAMP
-                """, tablePrefix);
+            long start = metrics.start();
+            List<ShopTransaction> transactions = new ArrayList<>();
+            String sql = String.format("SELECT id, plugin_name, transaction_type, amount, item, quantity, counterparty, created_at "
+                + "FROM %sshop_transactions WHERE player_uuid = ? AND delivered = 0 ORDER BY created_at, id", tablePrefix);
 
             try (Connection conn = getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-
                 stmt.setString(1, playerUuid.toString());
-                stmt.setString(2, playerName);
-                stmt.setString(3, data);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        transactions.add(new ShopTransaction(rs.getLong("id"), playerUuid,
+                            rs.getString("plugin_name"), rs.getString("transaction_type"),
+                            rs.getBigDecimal("amount"), rs.getString("item"), rs.getInt("quantity"),
+                            rs.getString("counterparty"), rs.getTimestamp("created_at")));
+                    }
+                }
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE,
+                    String.format("Failed to load pending shop transactions for %s", playerUuid), e);
+                return new ArrayList<>();
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
 
-                int rowsAffected = stmt.executeUpdate();
+            return transactions;
+        });
+    }
 
-                if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
-                    plugin.getLogger().info(String.format("Saved data for player %s (%s), rows affected: %d", 
-                                                        playerName, playerUuid, rowsAffected));
-                }
+    /**
+     * Marks the given ledger entries delivered.
+     */
+    public CompletableFuture<Boolean> markShopTransactionsDelivered(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
 
-                return rowsAffected > 0;
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            String sql = String.format("UPDATE %sshop_transactions SET delivered = 1, delivered_at = CURRENT_TIMESTAMP "
+                + "WHERE id = ? AND delivered = 0", tablePrefix);
 
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (long id : ids) {
+                    stmt.setLong(1, id);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                return true;
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, 
-                    String.format("Failed to save data for player %s (%s)", playerName, playerUuid), e);
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.WARNING,
+                    String.format("Failed to mark %d shop transactions delivered", ids.size()), e);
                 return false;
+            } finally {
+                metrics.record(Phase.QUERY, start);
             }
         });
     }
 
-    public CompletableFuture<String> getUserData(UUID playerUuid) {
+    /**
+     * Deletes delivered ledger entries older than {@code deliveredDays} days and undelivered ones
+     * older than {@code undeliveredDays}, whose owner evidently never came back.
+     */
+    public CompletableFuture<Integer> pruneShopTransactions(int deliveredDays, int undeliveredDays) {
         return CompletableFuture.supplyAsync(() -> {
-            String sql = String.format("SELECT data FROM %suser_data WHERE player_uuid = ?", tablePrefix);
+            long start = metrics.start();
+            String sql = String.format("DELETE FROM %1$sshop_transactions WHERE (delivered = 1 AND %2$s) OR (delivered = 0 AND %2$s)",
+                tablePrefix, backend.olderThanDays("created_at"));
 
             try (Connection conn = getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, deliveredDays);
+                stmt.setInt(2, undeliveredDays);
+                return stmt.executeUpdate();
+            } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.WARNING, "Failed to prune the shop transaction ledger", e);
+                return 0;
+            } finally {
+                metrics.record(Phase.QUERY, start);
+            }
+        });
+    }
 
-                stmt.setString(1, playerUuid.toString());
+    /**
+     * Adds hourly shop rollups onto the stored ones in one batched upsert.
+     * Runs on the calling thread; callers are expected to be off the main thread already.
+     */
+    public boolean upsertShopRollups(Collection<ShopRollup> rollups) {
+        if (rollups.isEmpty()) {
+            return true;
+        }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        String data = rs.getString("data");
+        long start = metrics.start();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(upsertShopRollupSql)) {
+
+            for (ShopRollup rollup : rollups) {
+                stmt.setLong(1, rollup.getHourBucket());
+                stmt.setString(2, rollup.getPluginName());
+                stmt.setString(3, rollup.getOwnerUuid().toString());
+                stmt.setString(4, rollup.getItem());
+                stmt.setString(5, rollup.getType());
+                stmt.setInt(6, rollup.getTradeCount());
+                stmt.setLong(7, rollup.getQuantity());
+                stmt.setBigDecimal(8, rollup.getTotalPrice());
+                stmt.setBigDecimal(9, rollup.getMinUnitPrice());
+                stmt.setBigDecimal(10, rollup.getMaxUnitPrice());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            return true;
 
-                        if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
-                            plugin.getLogger().info(String.format("Loaded data for player %s", playerUuid));
-                        }
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            plugin.getLogger().log(Level.WARNING,
+                String.format("Failed to write %d shop rollups", rollups.size()), e);
+            return false;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
 
-                        return data;
+    /**
+     * Aggregates the hourly rollups since {@code sinceHourBucket} per item and transaction type,
+     * optionally for a single item. Never touches the raw transaction ledger.
+     */
+    public CompletableFuture<List<ShopRollup>> getShopStats(long sinceHourBucket, String item, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
+            List<ShopRollup> stats = new ArrayList<>();
+            String sql = String.format("SELECT item, transaction_type, SUM(trade_count) AS trade_count, SUM(quantity) AS quantity, "
+                + "SUM(total_price) AS total_price, MIN(min_unit_price) AS min_unit_price, MAX(max_unit_price) AS max_unit_price "
+                + "FROM %sshop_rollups WHERE hour_bucket >= ?%s "
+                + "GROUP BY item, transaction_type ORDER BY SUM(total_price) DESC LIMIT ?",
+                tablePrefix, item != null ? " AND item = ?" : "");
+
+            try (Connection conn = getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                int index = 1;
+                stmt.setLong(index++, sinceHourBucket);
+                if (item != null) {
+                    stmt.setString(index++, item);
+                }
+                stmt.setInt(index, limit);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        stats.add(new ShopRollup(sinceHourBucket, null, null,
+                            rs.getString("item"), rs.getString("transaction_type"),
+                            rs.getInt("trade_count"), rs.getLong("quantity"), rs.getBigDecimal("total_price"),
+                            rs.getBigDecimal("min_unit_price"), rs.getBigDecimal("max_unit_price")));
                     }
                 }
 
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, 
-                    String.format("Failed to load data for player %s", playerUuid), e);
+                metrics.recordFailure(Phase.QUERY);
+                plugin.getLogger().log(Level.SEVERE, "Failed to load shop statistics", e);
+            } finally {
+                metrics.record(Phase.QUERY, start);
             }
 
-            return null;
+            return stats;
         });
     }
 
-    public CompletableFuture<Boolean> deleteUserData(UUID playerUuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = String.format("DELETE FROM %suser_data WHERE player_uuid = ?", tablePrefix);
-
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Progress of a background migration, or a fresh record if it never ran.
+     * Runs on the calling thread, like the other migration queries.
+     */
+    public MigrationProgress getMigrationProgress(String name) throws SQLException {
+        String sql = String.format("SELECT last_id, rows_migrated, completed FROM %smigrations WHERE name = ?", tablePrefix);
 
-                stmt.setString(1, playerUuid.toString());
-                int rowsAffected = stmt.executeUpdate();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-                return rowsAffected > 0;
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new MigrationProgress(name, rs.getLong("last_id"), rs.getLong("rows_migrated"), rs.getBoolean("completed"));
+                }
+            }
+        }
+        return new MigrationProgress(name, 0, 0, false);
+    }
 
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, 
-                    String.format("Failed to delete data for player %s", playerUuid), e);
-                return false;
+    /**
+     * Next chunk of rows in primary key order after {@code afterId} whose format is older than {@code formatVersion}.
+     */
+    public List<MigrationRow> fetchMigrationChunk(long afterId, int formatVersion, int limit) throws SQLException {
+        long start = metrics.start();
+        List<MigrationRow> rows = new ArrayList<>();
+        // deduplicated rows share their payload and are rewritten by their next save instead
+        String sql = String.format("SELECT id, player_uuid, data, data_version FROM %suser_data "
+            + "WHERE id > ? AND format_version < ? AND blob_hash IS NULL ORDER BY id LIMIT ?", tablePrefix);
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, formatVersion);
+            stmt.setInt(3, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new MigrationRow(rs.getLong("id"), UUID.fromString(rs.getString("player_uuid")),
+                        rs.getString("data"), rs.getLong("data_version"), null));
+                }
             }
-        });
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+        return rows;
     }
 
-    public CompletableFuture<List<PlayerData>> getAllUserData() {
-        return CompletableFuture.supplyAsync(() -> {
-            List<PlayerData> players = new ArrayList<>();
-            String sql = String.format("SELECT player_uuid, player_name, data, last_login FROM %suser_data", tablePrefix);
+    /**
+     * Writes a converted chunk and the migration's new position in one transaction. Each row is
+     * only updated if its {@code data_version} is unchanged since it was read, so a save that
+     * happened in between wins and the row is left alone.
+     *
+     * @return the number of rows actually rewritten
+     */
+    public int applyMigrationChunk(MigrationProgress progress, List<MigrationRow> rows, long lastId, int formatVersion, boolean completed) throws SQLException {
+        long start = metrics.start();
+        String updateSql = String.format("UPDATE %suser_data SET data = ?, last_account_name = ?, money = ?, nickname = ?, "
+            + "logout_time = ?, jailed = ?, format_version = ? WHERE id = ? AND data_version = ?", tablePrefix);
+        String progressSql = backend.upsert(tablePrefix + "migrations",
+            List.of("name", "last_id", "rows_migrated", "completed"), List.of("name"),
+            "last_id = " + backend.insertedValue("last_id")
+                + ", rows_migrated = " + backend.insertedValue("rows_migrated")
+                + ", completed = " + backend.insertedValue("completed"));
 
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int updated = 0;
+                if (!rows.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
+                        for (MigrationRow row : rows) {
+                            stmt.setString(1, row.getData());
+                            bindSummary(stmt, 2, row.getSummary());
+                            stmt.setInt(7, formatVersion);
+                            stmt.setLong(8, row.getId());
+                            stmt.setLong(9, row.getDataVersion());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                    updated = countMigratedRows(conn, rows, formatVersion);
+                }
 
-                while (rs.next()) {
-                    PlayerData playerData = new PlayerData(
-                        UUID.fromString(rs.getString("player_uuid")),
-                        rs.getString("player_name"),
-                        rs.getString("data"),
-                        rs.getTimestamp("last_login")
-                    );
-                    players.add(playerData);
+                try (PreparedStatement stmt = conn.prepareStatement(progressSql)) {
+                    stmt.setString(1, progress.getName());
+                    stmt.setLong(2, lastId);
+                    stmt.setLong(3, progress.getRowsMigrated() + updated);
+                    stmt.setBoolean(4, completed);
+                    stmt.executeUpdate();
                 }
 
+                conn.commit();
+                return updated;
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to load all user data", e);
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
+    }
 
-            return players;
-        });
+    /**
+     * Counts the rows of a chunk the caller's transaction rewrote: those now in the new format
+     * that still have the {@code data_version} they were read with, which a save in between
+     * would have bumped. Batch update counts are not reliable with rewritten batches, so the
+     * rows are looked up.
+     */
+    private int countMigratedRows(Connection conn, List<MigrationRow> rows, int formatVersion) throws SQLException {
+        Map<Long, Long> readVersions = new HashMap<>(rows.size() * 2);
+        rows.forEach(row -> readVersions.put(row.getId(), row.getDataVersion()));
+        List<Long> ids = new ArrayList<>(readVersions.keySet());
+
+        int migrated = 0;
+        for (int from = 0; from < ids.size(); from += IN_LIST_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_LIST_CHUNK, ids.size()));
+            String sql = String.format("SELECT id, data_version FROM %suser_data WHERE format_version = ? AND id IN (%s)",
+                tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")));
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, formatVersion);
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setLong(i + 2, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (readVersions.get(rs.getLong("id")) == rs.getLong("data_version")) {
+                            migrated++;
+                        }
+                    }
+                }
+            }
+        }
+        return migrated;
     }
 
-    public CompletableFuture<Integer> cleanupInactiveUsers(int daysInactive) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = String.format("""
-                DELETE FROM %suser_data 
-                WHERE last_login < DATE_SUB(NOW(), INTERVAL ? DAY)
-                """, tablePrefix);
+    /**
+     * Inserts history versions and prunes each player's old versions in one transaction.
+     * A player's versions are only written if the first of them follows the newest stored
+     * version; otherwise another server added to the history since the caller read it.
+     * Runs on the calling thread.
+     *
+     * @param pruneBelow per player, the lowest version to keep
+     * @return the players whose versions were not written because the stored history moved on
+     */
+    public Set<UUID> writeHistory(List<HistoryRow> rows, Map<UUID, Integer> pruneBelow) throws SQLException {
+        long start = metrics.start();
+        String insertSql = String.format("INSERT INTO %suser_data_history (player_uuid, version, snapshot, payload, saved_at) "
+            + "VALUES (?, ?, ?, ?, ?)", tablePrefix);
+        String pruneSql = String.format("DELETE FROM %suser_data_history WHERE player_uuid = ? AND version < ?", tablePrefix);
+
+        Map<UUID, Integer> firstVersions = new LinkedHashMap<>();
+        for (HistoryRow row : rows) {
+            firstVersions.merge(row.getUuid(), row.getVersion(), Math::min);
+        }
 
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement prune = conn.prepareStatement(pruneSql)) {
+                Map<UUID, Integer> stored = lockHistoryHeads(conn, firstVersions.keySet());
+                Set<UUID> conflicted = new HashSet<>();
+                for (Map.Entry<UUID, Integer> first : firstVersions.entrySet()) {
+                    if (stored.getOrDefault(first.getKey(), 0) != first.getValue() - 1) {
+                        conflicted.add(first.getKey());
+                    }
+                }
 
-                stmt.setInt(1, daysInactive);
-                int rowsAffected = stmt.executeUpdate();
+                for (HistoryRow row : rows) {
+                    if (conflicted.contains(row.getUuid())) {
+                        continue;
+                    }
+                    insert.setString(1, row.getUuid().toString());
+                    insert.setInt(2, row.getVersion());
+                    insert.setBoolean(3, row.isSnapshot());
+                    insert.setBytes(4, row.getPayload());
+                    insert.setLong(5, row.getSavedAt());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
 
-                plugin.getLogger().info(String.format("Cleanup completed: removed %d inactive players", rowsAffected));
-                return rowsAffected;
+                for (Map.Entry<UUID, Integer> entry : pruneBelow.entrySet()) {
+                    if (conflicted.contains(entry.getKey())) {
+                        continue;
+                    }
+                    prune.setString(1, entry.getKey().toString());
+                    prune.setInt(2, entry.getValue());
+                    prune.addBatch();
+                }
+                prune.executeBatch();
 
+                conn.commit();
+                return conflicted;
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Failed to cleanup inactive users", e);
-                return 0;
+                conn.rollback();
+                // another server inserted the same version, or deadlocked with us doing so
+                String state = e.getSQLState();
+                if (state != null && (state.startsWith("23") || state.startsWith("40"))) {
+                    return new HashSet<>(firstVersions.keySet());
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
-        });
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
     }
 
-    public CompletableFuture<Void> updateBalanceCache(UUID playerUuid, String playerName, double balance) {
-        return CompletableFuture.runAsync(() -> {
-            String sql = String.format("""
-                INSERT INTO %sbalance_cache (player_uuid, player_name, balance) 
-                VALUES (?, ?, ?) 
-                ON DUPLICATE KEY UPDATE 
-                player_name = VALUES(player_name), 
-                balance = VALUES(balance),
-                last_updated = CURRENT_TIMESTAMP
-                """, tablePrefix);
-
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, playerUuid.toString());
-                stmt.setString(2, playerName);
-                stmt.setDouble(3, balance);
-
-                stmt.executeUpdate();
+    /**
+     * Locks the stored history versions of the given players for the rest of the transaction
+     * and returns the newest version per player that has any.
+     */
+    private Map<UUID, Integer> lockHistoryHeads(Connection conn, Collection<UUID> playerUuids) throws SQLException {
+        List<UUID> remaining = new ArrayList<>(playerUuids);
+        Map<UUID, Integer> heads = new HashMap<>(remaining.size() * 2);
+        for (int from = 0; from < remaining.size(); from += IN_LIST_CHUNK) {
+            List<UUID> chunk = remaining.subList(from, Math.min(from + IN_LIST_CHUNK, remaining.size()));
+            String sql = String.format("SELECT player_uuid, version FROM %suser_data_history WHERE player_uuid IN (%s)%s",
+                tablePrefix, String.join(", ", Collections.nCopies(chunk.size(), "?")), backend.forUpdate());
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i).toString());
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        heads.merge(UUID.fromString(rs.getString("player_uuid")), rs.getInt("version"), Math::max);
+                    }
+                }
+            }
+        }
+        return heads;
+    }
 
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.WARNING, 
-                    String.format("Failed to update balance cache for player %s", playerName), e);
+    /**
+     * The rows needed to rebuild the newest version saved at or before {@code atMillis}:
+     * the last full snapshot up to it followed by the deltas after it, oldest first.
+     * Empty if no such version exists. Runs on the calling thread.
+     */
+    public List<HistoryRow> fetchHistoryChain(UUID playerUuid, long atMillis) throws SQLException {
+        long start = metrics.start();
+        String sql = String.format("SELECT version, snapshot, payload, saved_at FROM %1$suser_data_history "
+            + "WHERE player_uuid = ? AND saved_at <= ? AND version >= "
+            + "(SELECT MAX(version) FROM %1$suser_data_history WHERE player_uuid = ? AND snapshot = 1 AND saved_at <= ?) "
+            + "ORDER BY version", tablePrefix);
+        List<HistoryRow> rows = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, playerUuid.toString());
+            stmt.setLong(2, atMillis);
+            stmt.setString(3, playerUuid.toString());
+            stmt.setLong(4, atMillis);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new HistoryRow(playerUuid, rs.getInt("version"), rs.getBoolean("snapshot"),
+                        rs.getBytes("payload"), rs.getLong("saved_at")));
+                }
             }
-        });
+            return rows;
+        } catch (SQLException e) {
+            metrics.recordFailure(Phase.QUERY);
+            throw e;
+        } finally {
+            metrics.record(Phase.QUERY, start);
+        }
     }
 
     public CompletableFuture<List<BalanceEntry>> getTopBalances(int limit) {
         return CompletableFuture.supplyAsync(() -> {
+            long start = metrics.start();
             List<BalanceEntry> balances = new ArrayList<>();
             String sql = String.format("""
                 SELECT player_uuid, player_name, balance 
@@ -301,7 +2583,7 @@ public class DatabaseManager {
                 LIMIT ?
                 """, tablePrefix);
 
-            try (Connection conn = getConnection();
+            try (Connection conn = getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
 
                 stmt.setInt(1, limit);
@@ -318,13 +2600,24 @@ public class DatabaseManager {
                 }
 
             } catch (SQLException e) {
+                metrics.recordFailure(Phase.QUERY);
                 plugin.getLogger().log(Level.SEVERE, "Failed to get top balances", e);
+            } finally {
+                metrics.record(Phase.QUERY, start);
             }
 
             return balances;
         });
     }
 
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    public String getTablePrefix() {
+        return tablePrefix;
+    }
+
     public boolean isConnected() {
         if (dataSource == null || dataSource.isClosed()) {
             return false;
@@ -337,9 +2630,36 @@ public class DatabaseManager {
         }
     }
 
+    public PlayerNameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public long getSpooledSaves() {
+        return saveJournal != null ? saveJournal.getPendingRecords() : 0;
+    }
+
+    public boolean isReplicaEnabled() {
+        HikariDataSource replica = replicaDataSource;
+        return replica != null && !replica.isClosed();
+    }
+
     public void shutdown() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+        if (saveJournal != null) {
+            saveJournal.close();
+        }
+
+        HikariDataSource replica = replicaDataSource;
+        if (replica != null && !replica.isClosed()) {
+            replica.close();
+        }
+
+        HikariDataSource primary = dataSource;
+        if (primary != null && !primary.isClosed()) {
+            primary.close();
             plugin.getLogger().info("Database connection pool closed");
         }
     }
@@ -378,4 +2698,213 @@ public class DatabaseManager {
         public String getName() { return name; }
         public double getBalance() { return balance; }
     }
+
+    /**
+     * A change to an offline player's balance, identified by a key that stays the same across retries.
+     */
+    public static class BalanceDelta {
+        private final String key;
+        private final UUID uuid;
+        private final BigDecimal amount;
+
+        public BalanceDelta(String key, UUID uuid, BigDecimal amount) {
+            this.key = key;
+            this.uuid = uuid;
+            this.amount = amount;
+        }
+
+        public String getKey() { return key; }
+        public UUID getUuid() { return uuid; }
+        public BigDecimal getAmount() { return amount; }
+    }
+
+    public static class ShopTransaction {
+        private final long id;
+        private final UUID playerUuid;
+        private final String pluginName;
+        private final String type;
+        private final BigDecimal amount;
+        private final String item;
+        private final int quantity;
+        private final String counterparty;
+        private final Timestamp createdAt;
+
+        public ShopTransaction(long id, UUID playerUuid, String pluginName, String type, BigDecimal amount,
+                               String item, int quantity, String counterparty, Timestamp createdAt) {
+            this.id = id;
+            this.playerUuid = playerUuid;
+            this.pluginName = pluginName;
+            this.type = type;
+            this.amount = amount;
+            this.item = item;
+            this.quantity = quantity;
+            this.counterparty = counterparty;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() { return id; }
+        public UUID getPlayerUuid() { return playerUuid; }
+        public String getPluginName() { return pluginName; }
+        public String getType() { return type; }
+        public BigDecimal getAmount() { return amount; }
+        public String getItem() { return item; }
+        public int getQuantity() { return quantity; }
+        public String getCounterparty() { return counterparty; }
+        public Timestamp getCreatedAt() { return createdAt; }
+    }
+
+    public static class MigrationProgress {
+        private final String name;
+        private final long lastId;
+        private final long rowsMigrated;
+        private final boolean completed;
+
+        public MigrationProgress(String name, long lastId, long rowsMigrated, boolean completed) {
+            this.name = name;
+            this.lastId = lastId;
+            this.rowsMigrated = rowsMigrated;
+            this.completed = completed;
+        }
+
+        public String getName() { return name; }
+        public long getLastId() { return lastId; }
+        public long getRowsMigrated() { return rowsMigrated; }
+        public boolean isCompleted() { return completed; }
+    }
+
+    public static class MigrationRow {
+        private final long id;
+        private final UUID uuid;
+        private final String data;
+        private final long dataVersion;
+        private final UserDataSummary summary;
+
+        public MigrationRow(long id, UUID uuid, String data, long dataVersion, UserDataSummary summary) {
+            this.id = id;
+            this.uuid = uuid;
+            this.data = data;
+            this.dataVersion = dataVersion;
+            this.summary = summary;
+        }
+
+        public long getId() { return id; }
+        public UUID getUuid() { return uuid; }
+        public String getData() { return data; }
+        public long getDataVersion() { return dataVersion; }
+        public UserDataSummary getSummary() { return summary; }
+    }
+
+    private static final class ArchiveCandidate {
+        private final long id;
+        private final long dataVersion;
+        private final UUID uuid;
+        private final String name;
+        private final byte[] archived;
+        private final Timestamp lastLogin;
+        private final String blobHash;
+
+        private ArchiveCandidate(long id, long dataVersion, UUID uuid, String name, byte[] archived, Timestamp lastLogin, String blobHash) {
+            this.id = id;
+            this.dataVersion = dataVersion;
+            this.uuid = uuid;
+            this.name = name;
+            this.archived = archived;
+            this.lastLogin = lastLogin;
+            this.blobHash = blobHash;
+        }
+    }
+
+    /**
+     * Outcome of one {@link #archiveInactiveChunk} call. Fewer rows fetched than asked for
+     * means there is nothing left to archive.
+     */
+    public static class ArchiveChunk {
+        private final int fetched;
+        private final int archived;
+        private final long lastId;
+
+        public ArchiveChunk(int fetched, int archived, long lastId) {
+            this.fetched = fetched;
+            this.archived = archived;
+            this.lastId = lastId;
+        }
+
+        public int getFetched() { return fetched; }
+        public int getArchived() { return archived; }
+        public long getLastId() { return lastId; }
+    }
+
+    /**
+     * One stored history version: a gzipped full copy of the userdata when {@code snapshot},
+     * otherwise a {@link dk.noxitech.essentialssql.utils.BinaryDelta} against the version before.
+     */
+    public static class HistoryRow {
+        private final UUID uuid;
+        private final int version;
+        private final boolean snapshot;
+        private final byte[] payload;
+        private final long savedAt;
+
+        public HistoryRow(UUID uuid, int version, boolean snapshot, byte[] payload, long savedAt) {
+            this.uuid = uuid;
+            this.version = version;
+            this.snapshot = snapshot;
+            this.payload = payload;
+            this.savedAt = savedAt;
+        }
+
+        public UUID getUuid() { return uuid; }
+        public int getVersion() { return version; }
+        public boolean isSnapshot() { return snapshot; }
+        public byte[] getPayload() { return payload; }
+        public long getSavedAt() { return savedAt; }
+    }
+
+    /**
+     * Trade volume and prices for one owner, item and transaction type within one hour.
+     * Unit prices are the trade price divided by the quantity traded.
+     */
+    public static class ShopRollup {
+        private final long hourBucket;
+        private final String pluginName;
+        private final UUID ownerUuid;
+        private final String item;
+        private final String type;
+        private final int tradeCount;
+        private final long quantity;
+        private final BigDecimal totalPrice;
+        private final BigDecimal minUnitPrice;
+        private final BigDecimal maxUnitPrice;
+
+        public ShopRollup(long hourBucket, String pluginName, UUID ownerUuid, String item, String type, int tradeCount,
+                          long quantity, BigDecimal totalPrice, BigDecimal minUnitPrice, BigDecimal maxUnitPrice) {
+            this.hourBucket = hourBucket;
+            this.pluginName = pluginName;
+            this.ownerUuid = ownerUuid;
+            this.item = item;
+            this.type = type;
+            this.tradeCount = tradeCount;
+            this.quantity = quantity;
+            this.totalPrice = totalPrice;
+            this.minUnitPrice = minUnitPrice;
+            this.maxUnitPrice = maxUnitPrice;
+        }
+
+        public ShopRollup merge(ShopRollup other) {
+            return new ShopRollup(hourBucket, pluginName, ownerUuid, item, type,
+                tradeCount + other.tradeCount, quantity + other.quantity, totalPrice.add(other.totalPrice),
+                minUnitPrice.min(other.minUnitPrice), maxUnitPrice.max(other.maxUnitPrice));
+        }
+
+        public long getHourBucket() { return hourBucket; }
+        public String getPluginName() { return pluginName; }
+        public UUID getOwnerUuid() { return ownerUuid; }
+        public String getItem() { return item; }
+        public String getType() { return type; }
+        public int getTradeCount() { return tradeCount; }
+        public long getQuantity() { return quantity; }
+        public BigDecimal getTotalPrice() { return totalPrice; }
+        public BigDecimal getMinUnitPrice() { return minUnitPrice; }
+        public BigDecimal getMaxUnitPrice() { return maxUnitPrice; }
+    }
 }
\ No newline at end of file
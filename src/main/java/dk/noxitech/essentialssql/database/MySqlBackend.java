@@ -0,0 +1,153 @@
+package dk.noxitech.essentialssql.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MySqlBackend implements StorageBackend {
+
+    @Override
+    public String getName() {
+        return "MySQL";
+    }
+
+    @Override
+    public boolean isEmbedded() {
+        return false;
+    }
+
+    @Override
+    public void configure(HikariConfig hikariConfig, FileConfiguration config, File dataFolder) {
+        configureConnection(hikariConfig,
+            config.getString("database.host", "localhost"),
+            config.getInt("database.port", 3306),
+            config.getString("database.database", "essentials"),
+            config.getString("database.username", "root"),
+            config.getString("database.password", "password"));
+    }
+
+    /**
+     * Points a pool at the read replica from {@code database.replica}; unset values fall back to the primary's.
+     */
+    public void configureReplica(HikariConfig hikariConfig, FileConfiguration config) {
+        configureConnection(hikariConfig,
+            config.getString("database.replica.host", config.getString("database.host", "localhost")),
+            config.getInt("database.replica.port", config.getInt("database.port", 3306)),
+            config.getString("database.replica.database", config.getString("database.database", "essentials")),
+            config.getString("database.replica.username", config.getString("database.username", "root")),
+            config.getString("database.replica.password", config.getString("database.password", "password")));
+        hikariConfig.setReadOnly(true);
+    }
+
+    private void configureConnection(HikariConfig hikariConfig, String host, int port, String database, String username, String password) {
+        String jdbcUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=utf8", 
+                                     host, port, database);
+
+        hikariConfig.setJdbcUrl(jdbcUrl);
+        hikariConfig.setUsername(username);
+        hikariConfig.setPassword(password);
+        hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
+
+        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+        hikariConfig.addDataSourceProperty("useLocalSessionState", "true");
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+        hikariConfig.addDataSourceProperty("cacheResultSetMetadata", "true");
+        hikariConfig.addDataSourceProperty("cacheServerConfiguration", "true");
+        hikariConfig.addDataSourceProperty("elideSetAutoCommits", "true");
+        hikariConfig.addDataSourceProperty("maintainTimeStats", "false");
+    }
+
+    @Override
+    public String autoIncrementPrimaryKey() {
+        return "id INT AUTO_INCREMENT PRIMARY KEY";
+    }
+
+    @Override
+    public String updatedTimestamp() {
+        return "TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP";
+    }
+
+    @Override
+    public List<String> createTable(String table, List<String> columns, List<String> indexes) {
+        return createTable(table, columns, indexes, "");
+    }
+
+    @Override
+    public List<String> createCompressedTable(String table, List<String> columns, List<String> indexes) {
+        return createTable(table, columns, indexes, " ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8");
+    }
+
+    private List<String> createTable(String table, List<String> columns, List<String> indexes, String options) {
+        List<String> definitions = new ArrayList<>(columns);
+        for (String index : indexes) {
+            definitions.add("INDEX " + index);
+        }
+
+        return List.of(String.format(
+            "CREATE TABLE IF NOT EXISTS %s (\n    %s\n) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci%s",
+            table, String.join(",\n    ", definitions), options));
+    }
+
+    @Override
+    public String addIndex(String table, String index) {
+        return "ALTER TABLE " + table + " ADD INDEX " + index;
+    }
+
+    @Override
+    public String addUniqueIndex(String table, String index) {
+        return "ALTER TABLE " + table + " ADD UNIQUE INDEX " + index;
+    }
+
+    @Override
+    public String upsert(String table, List<String> columns, List<String> conflictColumns, String updateAssignments) {
+        return String.format("INSERT INTO %s (%s) VALUES (%s) ON DUPLICATE KEY UPDATE %s",
+            table, String.join(", ", columns), placeholders(columns.size()), updateAssignments);
+    }
+
+    @Override
+    public String insertedValue(String column) {
+        return "VALUES(" + column + ")";
+    }
+
+    @Override
+    public String insertIgnore(String table, List<String> columns) {
+        return String.format("INSERT IGNORE INTO %s (%s) VALUES (%s)",
+            table, String.join(", ", columns), placeholders(columns.size()));
+    }
+
+    @Override
+    public String least(String left, String right) {
+        return "LEAST(" + left + ", " + right + ")";
+    }
+
+    @Override
+    public String greatest(String left, String right) {
+        return "GREATEST(" + left + ", " + right + ")";
+    }
+
+    @Override
+    public String forUpdate() {
+        return " FOR UPDATE";
+    }
+
+    @Override
+    public String olderThanDays(String column) {
+        return column + " < DATE_SUB(NOW(), INTERVAL ? DAY)";
+    }
+
+    @Override
+    public boolean supportsPartitioning() {
+        return true;
+    }
+
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,116 @@
+package dk.noxitech.essentialssql.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index of every player name stored in {@code user_data}, so tab completion
+ * and name lookups for offline players never hit the database.
+ * <p>
+ * Names are kept lowercased in a sorted map; a prefix query is a range scan from the
+ * prefix to the prefix followed by the highest character. A second map from UUID to
+ * the indexed key lets renames and deletes remove the old entry.
+ */
+public class PlayerNameIndex {
+
+    private final ConcurrentSkipListMap<String, Entry> byName = new ConcurrentSkipListMap<>();
+    private final Map<UUID, String> keyByUuid = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public static final class Entry {
+        private final UUID uuid;
+        private final String name;
+
+        public Entry(UUID uuid, String name) {
+            this.uuid = uuid;
+            this.name = name;
+        }
+
+        public UUID getUuid() { return uuid; }
+        public String getName() { return name; }
+    }
+
+    public void put(UUID uuid, String name) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+
+        String key = name.toLowerCase(Locale.ROOT);
+        Entry entry = new Entry(uuid, name);
+        byName.put(key, entry);
+
+        String previous = keyByUuid.put(uuid, key);
+        if (previous != null && !previous.equals(key)) {
+            removeKey(previous, uuid);
+        }
+    }
+
+    public boolean contains(UUID uuid) {
+        return keyByUuid.containsKey(uuid);
+    }
+
+    public void remove(UUID uuid) {
+        String key = keyByUuid.remove(uuid);
+        if (key != null) {
+            removeKey(key, uuid);
+        }
+    }
+
+    private void removeKey(String key, UUID uuid) {
+        Entry entry = byName.get(key);
+        if (entry != null && entry.getUuid().equals(uuid)) {
+            byName.remove(key, entry);
+        }
+    }
+
+    /**
+     * Adds the names read at startup. Players saved while the load was running
+     * are already indexed under their newer name and are left alone.
+     */
+    public void load(Map<UUID, String> names) {
+        for (Map.Entry<UUID, String> name : names.entrySet()) {
+            if (!keyByUuid.containsKey(name.getKey())) {
+                put(name.getKey(), name.getValue());
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * Up to {@code limit} stored names starting with {@code prefix}, ignoring case, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        NavigableMap<String, Entry> range = byName.subMap(from, true, from + Character.MAX_VALUE, false);
+
+        List<String> names = new ArrayList<>(Math.min(limit, 16));
+        for (Entry entry : range.values()) {
+            if (names.size() >= limit) {
+                break;
+            }
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    /**
+     * The stored player with exactly this name, ignoring case, or null.
+     */
+    public Entry find(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return byName.size();
+    }
+}
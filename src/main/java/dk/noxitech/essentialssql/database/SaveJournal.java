@@ -0,0 +1,365 @@
+package dk.noxitech.essentialssql.database;
+
+import dk.noxitech.essentialssql.utils.UserDataSummary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local spool for saves that could not reach the database.
+ * <p>
+ * Each record is {@code [int length][int crc32][payload]} and is forced to disk
+ * before {@link #append} returns. On replay the active file is first moved aside
+ * so new saves can keep appending, and reading stops at the first record whose
+ * length or checksum does not match (a write torn by a crash). The newest spooled
+ * entry per player is also kept in memory so loads can see it before it is replayed.
+ * <p>
+ * Records that cannot be replayed are moved to {@code saves.journal.failed}, in the same
+ * format, so they are kept for an admin instead of blocking the rest of the journal.
+ */
+public class SaveJournal {
+
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final Path activeFile;
+    private final Path replayFile;
+    private final Path failedFile;
+    private final AtomicLong pendingRecords = new AtomicLong();
+    private final Map<UUID, Spooled> latest = new ConcurrentHashMap<>();
+    private long nextSequence;
+    private long rotatedSequence;
+    private int replayRecords;
+    private FileChannel channel;
+
+    public SaveJournal(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.activeFile = directory.toPath().resolve("saves.journal");
+        this.replayFile = directory.toPath().resolve("saves.journal.replay");
+        this.failedFile = directory.toPath().resolve("saves.journal.failed");
+
+        if (Files.exists(replayFile)) {
+            List<Entry> replayEntries = readRecords(replayFile);
+            replayEntries.forEach(this::remember);
+            rotatedSequence = nextSequence;
+            pendingRecords.addAndGet(replayEntries.size());
+        }
+        if (Files.exists(activeFile)) {
+            truncateTornTail(activeFile);
+            List<Entry> activeEntries = readRecords(activeFile);
+            activeEntries.forEach(this::remember);
+            pendingRecords.addAndGet(activeEntries.size());
+        }
+    }
+
+    private record Spooled(Entry entry, long sequence) {
+    }
+
+    public static class Entry {
+        private final UUID playerUuid;
+        private final String playerName;
+        private final String data;
+        private final UserDataSummary summary;
+        private final long baseVersion;
+
+        /**
+         * @param baseVersion the {@code data_version} of the row this save was based on, or -1 if unknown
+         */
+        public Entry(UUID playerUuid, String playerName, String data, UserDataSummary summary, long baseVersion) {
+            this.playerUuid = playerUuid;
+            this.playerName = playerName;
+            this.data = data;
+            this.summary = summary;
+            this.baseVersion = baseVersion;
+        }
+
+        public UUID getPlayerUuid() { return playerUuid; }
+        public String getPlayerName() { return playerName; }
+        public String getData() { return data; }
+        public UserDataSummary getSummary() { return summary; }
+        public long getBaseVersion() { return baseVersion; }
+    }
+
+    public synchronized void append(Entry entry) throws IOException {
+        ByteBuffer buffer = frame(entry);
+        if (channel == null) {
+            channel = FileChannel.open(activeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        pendingRecords.incrementAndGet();
+        remember(entry);
+    }
+
+    /**
+     * Appends a record that could not be replayed to the failed-records file.
+     */
+    public synchronized void quarantine(Entry entry) throws IOException {
+        ByteBuffer buffer = frame(entry);
+        try (FileChannel failed = FileChannel.open(failedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                failed.write(buffer);
+            }
+            failed.force(false);
+        }
+    }
+
+    public Path getFailedFile() {
+        return failedFile;
+    }
+
+    private static ByteBuffer frame(Entry entry) throws IOException {
+        byte[] payload = encode(entry);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void remember(Entry entry) {
+        latest.put(entry.getPlayerUuid(), new Spooled(entry, nextSequence++));
+    }
+
+    /**
+     * The newest save for a player that has not reached the database yet, or null.
+     */
+    public Entry getLatest(UUID playerUuid) {
+        Spooled spooled = latest.get(playerUuid);
+        return spooled != null ? spooled.entry() : null;
+    }
+
+    public boolean hasPending() {
+        return pendingRecords.get() > 0;
+    }
+
+    /**
+     * Whether a save for this player is still waiting in the journal. Later saves for the
+     * player have to queue behind it so they reach the database in order.
+     */
+    public boolean hasPending(UUID playerUuid) {
+        return latest.containsKey(playerUuid);
+    }
+
+    public long getPendingRecords() {
+        return pendingRecords.get();
+    }
+
+    /**
+     * Returns the records to replay, oldest first. An interrupted earlier replay is
+     * picked up again before the active file is rotated.
+     */
+    public synchronized List<Entry> beginReplay() throws IOException {
+        if (!Files.exists(replayFile)) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (!Files.exists(activeFile)) {
+                return new ArrayList<>();
+            }
+            Files.move(activeFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            rotatedSequence = nextSequence;
+        }
+
+        List<Entry> entries = readRecords(replayFile);
+        replayRecords = entries.size();
+        return entries;
+    }
+
+    /**
+     * Records how far a replay got. The players in {@code settled} were written or quarantined;
+     * {@code remaining} is what is left of the replay file and is retried on the next run, or the
+     * file is dropped when nothing is left.
+     */
+    public synchronized void finishReplay(Collection<UUID> settled, List<Entry> remaining) throws IOException {
+        if (remaining.isEmpty()) {
+            Files.deleteIfExists(replayFile);
+        } else if (remaining.size() < replayRecords) {
+            Path temp = replayFile.resolveSibling(replayFile.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : remaining) {
+                    ByteBuffer buffer = frame(entry);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(false);
+            }
+            Files.move(temp, replayFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        pendingRecords.addAndGet(remaining.size() - replayRecords);
+        replayRecords = remaining.size();
+        if (remaining.isEmpty() && !Files.exists(activeFile)) {
+            pendingRecords.set(0);
+        }
+        latest.entrySet().removeIf(spooled -> settled.contains(spooled.getKey()) && spooled.getValue().sequence() < rotatedSequence);
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Cuts a partially written record off the end of the file, so records appended
+     * after a crash stay readable.
+     */
+    private static void truncateTornTail(Path file) throws IOException {
+        long[] validBytes = new long[1];
+        readRecords(file, validBytes);
+        if (validBytes[0] < Files.size(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes[0]);
+            }
+        }
+    }
+
+    private static List<Entry> readRecords(Path file) throws IOException {
+        return readRecords(file, null);
+    }
+
+    private static List<Entry> readRecords(Path file, long[] validBytes) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                if (readFully(in, payload) < length) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                entries.add(decode(payload));
+                offset += 8L + length;
+            }
+        }
+
+        if (validBytes != null) {
+            validBytes[0] = offset;
+        }
+        return entries;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = in.read(buffer, read, buffer.length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getData().length() + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(entry.getPlayerUuid().getMostSignificantBits());
+            out.writeLong(entry.getPlayerUuid().getLeastSignificantBits());
+            out.writeUTF(entry.getPlayerName());
+
+            byte[] data = entry.getData().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(data.length);
+            out.write(data);
+
+            UserDataSummary summary = entry.getSummary();
+            writeNullable(out, summary.getLastAccountName());
+            writeNullable(out, summary.getMoney() != null ? summary.getMoney().toPlainString() : null);
+            writeNullable(out, summary.getNickname());
+            out.writeBoolean(summary.getLogoutTime() != null);
+            out.writeLong(summary.getLogoutTime() != null ? summary.getLogoutTime() : 0L);
+            out.writeBoolean(summary.isJailed());
+            out.writeLong(entry.getBaseVersion());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            UUID uuid = new UUID(in.readLong(), in.readLong());
+            String name = in.readUTF();
+
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+
+            String lastAccountName = readNullable(in);
+            String money = readNullable(in);
+            String nickname = readNullable(in);
+            boolean hasLogout = in.readBoolean();
+            long logout = in.readLong();
+            boolean jailed = in.readBoolean();
+            // records written before base versions were tracked end here
+            long baseVersion = in.available() >= Long.BYTES ? in.readLong() : -1L;
+
+            return new Entry(uuid, name, new String(data, StandardCharsets.UTF_8),
+                new UserDataSummary(lastAccountName, money != null ? new BigDecimal(money) : null, nickname,
+                    hasLogout ? logout : null, jailed), baseVersion);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,128 @@
+package dk.noxitech.essentialssql.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Embedded single-file database for servers that don't share data with others.
+ * Runs in WAL mode so readers never block the writer. The driver ships with the server.
+ * <p>
+ * Transactions start with {@code BEGIN IMMEDIATE}, taking the write lock up front. A deferred
+ * transaction that reads and then writes fails with {@code SQLITE_BUSY} as soon as another
+ * connection committed in between, without waiting on {@code busy_timeout}; an immediate one
+ * waits for the lock instead, which is what the read-then-update transactions rely on.
+ */
+public class SqliteBackend implements StorageBackend {
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public boolean isEmbedded() {
+        return true;
+    }
+
+    @Override
+    public void configure(HikariConfig hikariConfig, FileConfiguration config, File dataFolder) {
+        File databaseFile = new File(dataFolder, config.getString("database.sqlite.file", "database.db"));
+
+        hikariConfig.setJdbcUrl("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        hikariConfig.setDriverClassName("org.sqlite.JDBC");
+
+        hikariConfig.addDataSourceProperty("journal_mode", "WAL");
+        hikariConfig.addDataSourceProperty("synchronous", "NORMAL");
+        hikariConfig.addDataSourceProperty("busy_timeout", "5000");
+        hikariConfig.addDataSourceProperty("transaction_mode", "IMMEDIATE");
+        hikariConfig.addDataSourceProperty("date_string_format", "yyyy-MM-dd HH:mm:ss");
+    }
+
+    @Override
+    public String autoIncrementPrimaryKey() {
+        return "id INTEGER PRIMARY KEY AUTOINCREMENT";
+    }
+
+    @Override
+    public String updatedTimestamp() {
+        return "TIMESTAMP DEFAULT CURRENT_TIMESTAMP";
+    }
+
+    @Override
+    public List<String> createTable(String table, List<String> columns, List<String> indexes) {
+        List<String> statements = new ArrayList<>();
+        statements.add(String.format("CREATE TABLE IF NOT EXISTS %s (\n    %s\n)", table, String.join(",\n    ", columns)));
+
+        for (String index : indexes) {
+            statements.add(addIndex(table, index));
+        }
+
+        return statements;
+    }
+
+    @Override
+    public List<String> createCompressedTable(String table, List<String> columns, List<String> indexes) {
+        return createTable(table, columns, indexes);
+    }
+
+    @Override
+    public String addIndex(String table, String index) {
+        int open = index.indexOf('(');
+        String indexName = index.substring(0, open).trim();
+        return String.format("CREATE INDEX IF NOT EXISTS %s_%s ON %s %s", table, indexName, table, index.substring(open));
+    }
+
+    @Override
+    public String addUniqueIndex(String table, String index) {
+        int open = index.indexOf('(');
+        String indexName = index.substring(0, open).trim();
+        return String.format("CREATE UNIQUE INDEX IF NOT EXISTS %s_%s ON %s %s", table, indexName, table, index.substring(open));
+    }
+
+    @Override
+    public String upsert(String table, List<String> columns, List<String> conflictColumns, String updateAssignments) {
+        return String.format("INSERT INTO %s (%s) VALUES (%s) ON CONFLICT (%s) DO UPDATE SET %s",
+            table, String.join(", ", columns), MySqlBackend.placeholders(columns.size()),
+            String.join(", ", conflictColumns), updateAssignments);
+    }
+
+    @Override
+    public String insertedValue(String column) {
+        return "excluded." + column;
+    }
+
+    @Override
+    public String insertIgnore(String table, List<String> columns) {
+        return String.format("INSERT OR IGNORE INTO %s (%s) VALUES (%s)",
+            table, String.join(", ", columns), MySqlBackend.placeholders(columns.size()));
+    }
+
+    @Override
+    public String least(String left, String right) {
+        return "MIN(" + left + ", " + right + ")";
+    }
+
+    @Override
+    public String greatest(String left, String right) {
+        return "MAX(" + left + ", " + right + ")";
+    }
+
+    @Override
+    public String forUpdate() {
+        return ""; // transactions already hold the write lock from their first statement
+    }
+
+    @Override
+    public String olderThanDays(String column) {
+        return column + " < datetime('now', '-' || ? || ' days')";
+    }
+
+    @Override
+    public boolean supportsPartitioning() {
+        return false;
+    }
+}
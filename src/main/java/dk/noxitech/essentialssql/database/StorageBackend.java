@@ -0,0 +1,100 @@
+package dk.noxitech.essentialssql.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Dialect and connection setup for one kind of database behind {@link DatabaseManager}.
+ * Everything that differs between engines (JDBC URL, DDL, upserts, date arithmetic)
+ * goes through here so the queries in DatabaseManager stay engine-neutral.
+ */
+public interface StorageBackend {
+
+    String getName();
+
+    /**
+     * Whether the database lives inside the server process and is not shared with other servers.
+     */
+    boolean isEmbedded();
+
+    void configure(HikariConfig hikariConfig, FileConfiguration config, File dataFolder);
+
+    /**
+     * Column definition for a surrogate auto-increment primary key named {@code id}.
+     */
+    String autoIncrementPrimaryKey();
+
+    /**
+     * Column type for a timestamp that defaults to the insert time and is bumped on update where supported.
+     */
+    String updatedTimestamp();
+
+    /**
+     * Builds the statements creating a table and its secondary indexes.
+     *
+     * @param columns column and constraint definitions
+     * @param indexes index definitions of the form {@code idx_name (col1, col2)}
+     */
+    List<String> createTable(String table, List<String> columns, List<String> indexes);
+
+    /**
+     * Like {@link #createTable}, for rarely read tables that should be stored compressed where the engine supports it.
+     */
+    List<String> createCompressedTable(String table, List<String> columns, List<String> indexes);
+
+    /**
+     * Builds the statement adding a secondary index, of the form {@code idx_name (col1, col2)}, to an existing table.
+     */
+    String addIndex(String table, String index);
+
+    /**
+     * Like {@link #addIndex}, for an index that rejects duplicate keys.
+     */
+    String addUniqueIndex(String table, String index);
+
+    /**
+     * Builds an insert that updates the existing row when {@code conflictColumns} already exist.
+     * {@code updateAssignments} may reference the attempted values through {@link #insertedValue(String)}.
+     */
+    String upsert(String table, List<String> columns, List<String> conflictColumns, String updateAssignments);
+
+    String insertedValue(String column);
+
+    /**
+     * Builds an insert that silently skips rows whose unique key already exists.
+     */
+    String insertIgnore(String table, List<String> columns);
+
+    /**
+     * Scalar minimum and maximum of two expressions.
+     */
+    String least(String left, String right);
+
+    String greatest(String left, String right);
+
+    /**
+     * Locking clause appended to a SELECT that is followed by an UPDATE of the same rows in one transaction.
+     * Empty where transactions take the database write lock when they begin.
+     */
+    String forUpdate();
+
+    /**
+     * Predicate that is true when {@code column} is more than {@code ?} days in the past.
+     */
+    String olderThanDays(String column);
+
+    /**
+     * Whether {@code user_data} can use the month-partitioned layout of {@link UserDataPartitions}.
+     */
+    boolean supportsPartitioning();
+
+    static StorageBackend forType(String type) {
+        if (type != null && type.equalsIgnoreCase("SQLite")) {
+            return new SqliteBackend();
+        }
+        return new MySqlBackend();
+    }
+}
@@ -0,0 +1,200 @@
+package dk.noxitech.essentialssql.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * MySQL layout that range-partitions {@code user_data} by {@code active_month}, the
+ * {@code yyyymm} month of each player's last save, with one partition per month and a
+ * catch-all {@code pmax} partition for future months.
+ * <p>
+ * Removing the players inactive since before a month then drops whole partitions, which
+ * is a metadata change instead of a row-by-row delete with its undo log and replication
+ * traffic. MySQL requires the partition column in every unique key, so the layout keys rows
+ * on {@code (player_uuid, active_month)}; saves move a returning player's row into the
+ * current month before writing it, so each player still has exactly one row.
+ */
+final class UserDataPartitions {
+
+    private static final String CATCH_ALL = "pmax";
+
+    private final String table;
+
+    UserDataPartitions(String table) {
+        this.table = table;
+    }
+
+    static int monthOf(LocalDate date) {
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    static int currentMonth() {
+        return monthOf(LocalDate.now());
+    }
+
+    private static int nextMonth(int month) {
+        return month % 100 == 12 ? (month / 100 + 1) * 100 + 1 : month + 1;
+    }
+
+    boolean isPartitioned(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the table into the partitioned layout. Takes as long as copying the table once.
+     */
+    void convert(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(String.format("UPDATE %s SET active_month = YEAR(last_login) * 100 + MONTH(last_login) "
+                + "WHERE active_month = 0", table));
+        }
+
+        int current = currentMonth();
+        int first = current;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(String.format("SELECT MIN(active_month) FROM %s WHERE active_month > 0", table))) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                first = Math.min(rs.getInt(1), current);
+            }
+        }
+
+        StringBuilder alter = new StringBuilder("ALTER TABLE ").append(table).append(" DROP PRIMARY KEY");
+        for (String index : uniqueIndexes(conn)) {
+            alter.append(", DROP INDEX `").append(index).append('`');
+        }
+        alter.append(", ADD PRIMARY KEY (player_uuid, active_month), ADD INDEX idx_id (id)")
+            .append(" PARTITION BY RANGE (active_month) (")
+            .append(partitionDefinitions(first, nextMonth(current)))
+            .append(", PARTITION ").append(CATCH_ALL).append(" VALUES LESS THAN MAXVALUE)");
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(alter.toString());
+        }
+    }
+
+    private List<String> uniqueIndexes(Connection conn) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT INDEX_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND NON_UNIQUE = 0 AND INDEX_NAME <> 'PRIMARY'")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(rs.getString(1));
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Splits partitions off {@code pmax} until the next month has its own. Cheap while
+     * {@code pmax} is empty, which it is as long as this runs at least monthly.
+     */
+    void ensurePartitions(Connection conn) throws SQLException {
+        int highestBound = 0;
+        for (int bound : partitionBounds(conn)) {
+            highestBound = Math.max(highestBound, bound);
+        }
+
+        int wanted = nextMonth(nextMonth(currentMonth()));
+        if (highestBound == 0 || highestBound >= wanted) {
+            return;
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("ALTER TABLE %s REORGANIZE PARTITION %s INTO (%s, PARTITION %s VALUES LESS THAN MAXVALUE)",
+                table, CATCH_ALL, partitionDefinitions(highestBound, nextMonth(currentMonth())), CATCH_ALL));
+        }
+    }
+
+    /**
+     * Drops every partition holding only months before {@code cutoffMonth}.
+     *
+     * @return the players whose rows were dropped
+     */
+    List<UUID> dropBefore(Connection conn, int cutoffMonth) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        int highestExpired = 0;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int bound = parseBound(rs.getString(2));
+                    if (bound > 0 && bound <= cutoffMonth) {
+                        expired.add(rs.getString(1));
+                        highestExpired = Math.max(highestExpired, bound);
+                    }
+                }
+            }
+        }
+
+        if (expired.isEmpty()) {
+            return List.of();
+        }
+
+        List<UUID> players = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(String.format("SELECT player_uuid FROM %s WHERE active_month < ?", table))) {
+            stmt.setInt(1, highestExpired);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    players.add(UUID.fromString(rs.getString(1)));
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("ALTER TABLE %s DROP PARTITION %s", table, String.join(", ", expired)));
+        }
+        return players;
+    }
+
+    private List<Integer> partitionBounds(Connection conn) throws SQLException {
+        List<Integer> bounds = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int bound = parseBound(rs.getString(1));
+                    if (bound > 0) {
+                        bounds.add(bound);
+                    }
+                }
+            }
+        }
+        return bounds;
+    }
+
+    private static int parseBound(String description) {
+        try {
+            return Integer.parseInt(description);
+        } catch (NumberFormatException e) {
+            return 0; // MAXVALUE
+        }
+    }
+
+    /**
+     * One partition per month from {@code from} through {@code through}, each named after its month.
+     */
+    private static String partitionDefinitions(int from, int through) {
+        List<String> definitions = new ArrayList<>();
+        for (int month = from; month <= through; month = nextMonth(month)) {
+            definitions.add(String.format("PARTITION p%d VALUES LESS THAN (%d)", month, nextMonth(month)));
+        }
+        return String.join(", ", definitions);
+    }
+}
@@ -0,0 +1,232 @@
+package dk.noxitech.essentialssql.integration;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.WriteKind;
+import dk.noxitech.essentialssql.database.DatabaseManager.WriteListener;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Tells the other backends behind the proxy which players this server wrote, so their
+ * caches drop or refresh those entries right away instead of waiting for their TTL.
+ * <p>
+ * Messages go through the proxy's {@code BungeeCord} plugin messaging channel as a
+ * {@code Forward} to every server with players online, which BungeeCord and Velocity both
+ * support without any extra service. Writes are collected and sent every few ticks, at most
+ * {@value #MAX_ENTRIES_PER_MESSAGE} per message. Each message names its sender, an id picked at
+ * startup, and each entry carries the player's UUID, the {@link WriteKind} and a version counted
+ * up by the sender per write. Clocks of different servers never get compared: a receiver only
+ * ignores entries older than one it already applied from the same sender for the same player
+ * and kind, which can only be a message the proxy delivered out of order.
+ * <p>
+ * Plugin messages need a player connection to travel on, so writes made while this server
+ * is empty are not announced and peers fall back to their TTL.
+ */
+public class CacheInvalidationChannel implements PluginMessageListener {
+
+    private static final String CHANNEL = "BungeeCord";
+    private static final String SUBCHANNEL = "EssentialsSQLInvalidate";
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_ENTRIES_PER_MESSAGE = 1000;
+    private static final long FLUSH_INTERVAL_TICKS = 5L;
+    private static final int MAX_TRACKED_VERSIONS = 10_000;
+
+    private final Main plugin;
+    private final UUID senderId = UUID.randomUUID();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Queue<Invalidation> outgoing = new ConcurrentLinkedQueue<>();
+    private final Map<Key, Long> appliedVersions = new ConcurrentHashMap<>();
+    private final List<WriteListener> receivers = new CopyOnWriteArrayList<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private volatile BukkitTask flushTask;
+
+    public CacheInvalidationChannel(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+
+        databaseManager.addWriteListener(this::announce);
+        plugin.getMetricsRegistry().registerGauge("invalidations_sent", "Cache invalidations sent to other servers", sent::get);
+        plugin.getMetricsRegistry().registerGauge("invalidations_received", "Cache invalidations received from other servers", received::get);
+    }
+
+    private record Invalidation(UUID uuid, WriteKind kind, long version) {
+    }
+
+    private record Key(UUID sender, UUID uuid, WriteKind kind) {
+    }
+
+    /**
+     * Registers a cache to be told about writes announced by other servers. Receivers run on the main thread.
+     */
+    public void addReceiver(WriteListener receiver) {
+        receivers.add(receiver);
+    }
+
+    public void start() {
+        if (!plugin.getConfig().getBoolean("network.invalidation.enabled", false)) {
+            return;
+        }
+
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, FLUSH_INTERVAL_TICKS, FLUSH_INTERVAL_TICKS);
+    }
+
+    private void announce(UUID playerUuid, WriteKind kind) {
+        if (flushTask != null) {
+            outgoing.add(new Invalidation(playerUuid, kind, sequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Sends what was written since the last flush. Main thread only.
+     */
+    private void flush() {
+        if (outgoing.isEmpty()) {
+            return;
+        }
+
+        Map<Key, Invalidation> newest = new LinkedHashMap<>();
+        Invalidation invalidation;
+        while ((invalidation = outgoing.poll()) != null) {
+            newest.put(new Key(senderId, invalidation.uuid(), invalidation.kind()), invalidation);
+        }
+
+        Iterator<? extends Player> online = plugin.getServer().getOnlinePlayers().iterator();
+        if (!online.hasNext()) {
+            return;
+        }
+        Player carrier = online.next();
+
+        List<Invalidation> batch = new ArrayList<>(newest.values());
+        try {
+            for (int from = 0; from < batch.size(); from += MAX_ENTRIES_PER_MESSAGE) {
+                List<Invalidation> chunk = batch.subList(from, Math.min(from + MAX_ENTRIES_PER_MESSAGE, batch.size()));
+                carrier.sendPluginMessage(plugin, CHANNEL, encode(chunk));
+            }
+            sent.addAndGet(batch.size());
+
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Announced %d writes to the other servers", batch.size()));
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to announce " + batch.size() + " writes to the other servers", e);
+        }
+    }
+
+    private byte[] encode(List<Invalidation> entries) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(19 + entries.size() * 25);
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeByte(FORMAT_VERSION);
+        bodyOut.writeLong(senderId.getMostSignificantBits());
+        bodyOut.writeLong(senderId.getLeastSignificantBits());
+        bodyOut.writeShort(entries.size());
+        for (Invalidation entry : entries) {
+            bodyOut.writeByte(entry.kind().ordinal());
+            bodyOut.writeLong(entry.uuid().getMostSignificantBits());
+            bodyOut.writeLong(entry.uuid().getLeastSignificantBits());
+            bodyOut.writeLong(entry.version());
+        }
+
+        ByteArrayOutputStream message = new ByteArrayOutputStream(body.size() + 64);
+        DataOutputStream out = new DataOutputStream(message);
+        out.writeUTF("Forward");
+        out.writeUTF("ONLINE");
+        out.writeUTF(SUBCHANNEL);
+        out.writeShort(body.size());
+        body.writeTo(out);
+        return message.toByteArray();
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        if (!CHANNEL.equals(channel)) {
+            return;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (!SUBCHANNEL.equals(in.readUTF())) {
+                return;
+            }
+
+            byte[] body = new byte[in.readUnsignedShort()];
+            in.readFully(body);
+            DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+            if (bodyIn.readUnsignedByte() != FORMAT_VERSION) {
+                return;
+            }
+
+            UUID sender = new UUID(bodyIn.readLong(), bodyIn.readLong());
+            if (sender.equals(senderId)) {
+                return;
+            }
+
+            WriteKind[] kinds = WriteKind.values();
+            int count = bodyIn.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                int kind = bodyIn.readUnsignedByte();
+                UUID uuid = new UUID(bodyIn.readLong(), bodyIn.readLong());
+                long version = bodyIn.readLong();
+                if (kind < kinds.length) {
+                    apply(sender, uuid, kinds[kind], version);
+                }
+            }
+            received.addAndGet(count);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Ignored a malformed cache invalidation message", e);
+        }
+    }
+
+    private void apply(UUID sender, UUID playerUuid, WriteKind kind, long version) {
+        Key key = new Key(sender, playerUuid, kind);
+        Long applied = appliedVersions.get(key);
+        if (applied != null && applied >= version) {
+            return;
+        }
+
+        if (appliedVersions.size() >= MAX_TRACKED_VERSIONS) {
+            appliedVersions.clear();
+        }
+        appliedVersions.put(key, version);
+
+        for (WriteListener receiver : receivers) {
+            try {
+                receiver.onWrite(playerUuid, kind);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "A cache failed to apply an invalidation for " + playerUuid, e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+            plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+            plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL, this);
+        }
+        outgoing.clear();
+    }
+}
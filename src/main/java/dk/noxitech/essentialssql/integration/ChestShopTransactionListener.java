@@ -0,0 +1,62 @@
+package dk.noxitech.essentialssql.integration;
+
+import com.Acrobot.ChestShop.Database.Account;
+import com.Acrobot.ChestShop.Events.TransactionEvent;
+import com.Acrobot.ChestShop.UUIDs.NameManager;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Feeds ChestShop trades into the hourly rollups and records those against
+ * offline shop owners in the ledger. Kept separate from
+ * {@link ShopIntegrationManager} so the ChestShop classes are only loaded when
+ * the plugin is actually installed.
+ */
+public class ChestShopTransactionListener implements Listener {
+
+    private final ShopIntegrationManager shopIntegrationManager;
+    private final boolean offlineSales;
+    private final boolean offlineBuyOrders;
+
+    public ChestShopTransactionListener(ShopIntegrationManager shopIntegrationManager, boolean offlineSales, boolean offlineBuyOrders) {
+        this.shopIntegrationManager = shopIntegrationManager;
+        this.offlineSales = offlineSales;
+        this.offlineBuyOrders = offlineBuyOrders;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTransaction(TransactionEvent event) {
+        Account owner = event.getOwnerAccount();
+        if (owner == null || owner.getUuid() == null) {
+            return;
+        }
+
+        String item = null;
+        int quantity = 0;
+        for (ItemStack stack : event.getStock()) {
+            if (stack != null) {
+                if (item == null) {
+                    item = stack.getType().name();
+                }
+                quantity += stack.getAmount();
+            }
+        }
+
+        boolean sale = event.getTransactionType() == TransactionEvent.TransactionType.BUY;
+        String type = sale ? ShopIntegrationManager.TYPE_SALE : ShopIntegrationManager.TYPE_PURCHASE;
+
+        shopIntegrationManager.recordRollup("ChestShop", owner.getUuid(), type, event.getExactPrice(), item, quantity);
+
+        // admin shops are owned by ChestShop's server account, which never joins to read the ledger
+        if (NameManager.isAdminShop(owner.getUuid()) || Bukkit.getPlayer(owner.getUuid()) != null
+                || (sale ? !offlineSales : !offlineBuyOrders)) {
+            return;
+        }
+
+        shopIntegrationManager.handleOfflineShopTransaction(owner.getUuid(), "ChestShop", type,
+            event.getExactPrice(), item, quantity, event.getClient().getName());
+    }
+}
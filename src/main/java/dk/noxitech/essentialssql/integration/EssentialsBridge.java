@@ -0,0 +1,115 @@
+package dk.noxitech.essentialssql.integration;
+
+import com.earth2me.essentials.User;
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import net.ess3.api.IEssentials;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Talks to the loaded Essentials {@link User} objects so userdata doesn't have to wait
+ * for Essentials to notice file changes on its own. Loads are applied with
+ * {@link User#reloadConfig()}, and before a save the user's queued config writes are
+ * flushed, so the file read back is never older than what Essentials holds in memory.
+ * <p>
+ * The flush goes through the user's config holder by reflection because EssentialsX
+ * doesn't expose a blocking save on {@code User}; if that ever changes shape the bridge
+ * falls back to the plain file round trip. All methods must run on the main thread.
+ */
+public class EssentialsBridge {
+
+    private final Main plugin;
+    private Field configField;
+    private Method blockingSaveMethod;
+    private boolean flushUnavailable;
+
+    public EssentialsBridge(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    private IEssentials essentials() {
+        Plugin essentials = plugin.getServer().getPluginManager().getPlugin("Essentials");
+        return essentials instanceof IEssentials && essentials.isEnabled() ? (IEssentials) essentials : null;
+    }
+
+    public boolean isAvailable() {
+        return essentials() != null;
+    }
+
+    /**
+     * Makes Essentials re-read a userdata file that was replaced after the user was loaded.
+     */
+    public boolean reloadUser(UUID playerUuid) {
+        IEssentials essentials = essentials();
+        if (essentials == null) {
+            return false;
+        }
+
+        try {
+            User user = essentials.getUser(playerUuid);
+            if (user == null) {
+                return false;
+            }
+
+            user.reloadConfig();
+            if (plugin.getSettings().shouldLog(DebugCategory.FILE)) {
+                plugin.getLogger().info("Reloaded Essentials user " + playerUuid + " from the installed userdata");
+            }
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to reload Essentials user " + playerUuid, e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the user's in-memory config to disk right away instead of on Essentials'
+     * background writer.
+     *
+     * @return false if nothing was flushed and the file may lag behind memory
+     */
+    public boolean flushUser(UUID playerUuid) {
+        IEssentials essentials = essentials();
+        if (essentials == null || flushUnavailable) {
+            return false;
+        }
+
+        try {
+            User user = essentials.getUser(playerUuid);
+            if (user == null) {
+                return false;
+            }
+
+            if (blockingSaveMethod == null) {
+                configField = findField(user.getClass(), "config");
+                configField.setAccessible(true);
+                blockingSaveMethod = configField.getType().getMethod("blockingSave");
+            }
+
+            blockingSaveMethod.invoke(configField.get(user));
+            return true;
+        } catch (NoSuchFieldException | NoSuchMethodException e) {
+            flushUnavailable = true;
+            plugin.getLogger().warning("This Essentials version has no blocking user save - saves read the userdata file as-is");
+            return false;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to flush Essentials user " + playerUuid, e);
+            return false;
+        }
+    }
+
+    private static Field findField(Class<?> type, String name) throws NoSuchFieldException {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                return current.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
@@ -0,0 +1,99 @@
+package dk.noxitech.essentialssql.integration;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.manager.LeaderboardManager;
+import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.OfflinePlayer;
+
+/**
+ * PlaceholderAPI expansion backed by the in-memory leaderboard snapshot:
+ * {@code %esql_baltop_<n>_name%}, {@code %esql_baltop_<n>_balance%} and {@code %esql_rank%}.
+ * Placeholders are resolved on the main thread every few ticks, so nothing here touches
+ * the database. Kept in its own class so PlaceholderAPI is only loaded when installed.
+ */
+public class EssentialsSQLExpansion extends PlaceholderExpansion {
+
+    private static final String BALTOP_PREFIX = "baltop_";
+
+    private final Main plugin;
+    private final LeaderboardManager leaderboardManager;
+
+    public EssentialsSQLExpansion(Main plugin, LeaderboardManager leaderboardManager) {
+        this.plugin = plugin;
+        this.leaderboardManager = leaderboardManager;
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "esql";
+    }
+
+    @Override
+    public String getAuthor() {
+        return String.join(", ", plugin.getDescription().getAuthors());
+    }
+
+    @Override
+    public String getVersion() {
+        return plugin.getDescription().getVersion();
+    }
+
+    @Override
+    public boolean persist() {
+        return true;
+    }
+
+    @Override
+    public String onRequest(OfflinePlayer player, String params) {
+        LeaderboardManager.Snapshot snapshot = leaderboardManager.getSnapshot();
+        String empty = plugin.getSettings().getPlaceholderEmpty();
+
+        if ("rank".equals(params)) {
+            String rank = player != null ? snapshot.getRank(player.getUniqueId()) : null;
+            return rank != null ? rank : empty;
+        }
+
+        if (params.startsWith(BALTOP_PREFIX)) {
+            int separator = params.indexOf('_', BALTOP_PREFIX.length());
+            if (separator < 0) {
+                return null;
+            }
+
+            int position = parsePosition(params, BALTOP_PREFIX.length(), separator);
+            String value;
+            if (isField(params, separator, "name")) {
+                value = snapshot.getName(position);
+            } else if (isField(params, separator, "balance")) {
+                value = snapshot.getBalance(position);
+            } else {
+                return null;
+            }
+            return value != null ? value : empty;
+        }
+
+        return null;
+    }
+
+    private static boolean isField(String params, int separator, String field) {
+        return params.length() == separator + 1 + field.length() && params.startsWith(field, separator + 1);
+    }
+
+    /**
+     * Parses the digits between {@code start} and {@code end} without allocating, or -1.
+     */
+    private static int parsePosition(String params, int start, int end) {
+        if (start == end || end - start > 6) {
+            return -1;
+        }
+
+        int position = 0;
+        for (int i = start; i < end; i++) {
+            char c = params.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            position = position * 10 + (c - '0');
+        }
+        return position;
+    }
+}
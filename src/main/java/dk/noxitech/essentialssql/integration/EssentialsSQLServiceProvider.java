@@ -0,0 +1,148 @@
+package dk.noxitech.essentialssql.integration;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.api.EssentialsSQLService;
+import dk.noxitech.essentialssql.api.PlayerProfile;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.PlayerNameIndex;
+import org.bukkit.plugin.ServicePriority;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EssentialsSQLService} backed by the plugin's own pool. Profiles are cached for
+ * {@code api.cache-seconds}, including players that have no row, so plugins polling the
+ * same players don't each cost a query. A write through this server drops the player's
+ * entry right away; writes from other servers show up once the entry expires, or right
+ * away when {@code network.invalidation} is enabled.
+ */
+public class EssentialsSQLServiceProvider implements EssentialsSQLService {
+
+    private static final int MAX_CACHED_PROFILES = 10_000;
+
+    private final Main plugin;
+    private final DatabaseManager databaseManager;
+    private final Map<UUID, Cached> cache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EssentialsSQLServiceProvider(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        databaseManager.addWriteListener((playerUuid, kind) -> invalidate(playerUuid));
+        plugin.getMetricsRegistry().registerGauge("api_cache_hits", "Service API lookups answered from the profile cache", cacheHits::get);
+        plugin.getMetricsRegistry().registerGauge("api_cache_misses", "Service API lookups that went to the database", cacheMisses::get);
+    }
+
+    private static final class Cached {
+        private final PlayerProfile profile;
+        private final long expiresAt;
+
+        private Cached(PlayerProfile profile, long expiresAt) {
+            this.profile = profile;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public void register() {
+        plugin.getServer().getServicesManager().register(EssentialsSQLService.class, this, plugin, ServicePriority.Normal);
+    }
+
+    public void unregister() {
+        plugin.getServer().getServicesManager().unregister(EssentialsSQLService.class, this);
+        cache.clear();
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerProfile>> getPlayer(UUID playerUuid) {
+        return getPlayers(List.of(playerUuid)).thenApply(profiles -> Optional.ofNullable(profiles.get(playerUuid)));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, PlayerProfile>> getPlayers(Collection<UUID> playerUuids) {
+        Map<UUID, PlayerProfile> result = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        Collection<UUID> requested = new LinkedHashSet<>(playerUuids);
+        long now = System.currentTimeMillis();
+
+        for (UUID uuid : requested) {
+            Cached cached = cache.get(uuid);
+            if (cached != null && cached.expiresAt > now) {
+                if (cached.profile != null) {
+                    result.put(uuid, cached.profile);
+                }
+            } else {
+                missing.add(uuid);
+            }
+        }
+
+        cacheHits.addAndGet(requested.size() - missing.size());
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        cacheMisses.addAndGet(missing.size());
+
+        return CompletableFuture.supplyAsync(() -> {
+            long generation = invalidations.get();
+            Map<UUID, PlayerProfile> loaded;
+            try {
+                loaded = databaseManager.getPlayerProfiles(missing);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+
+            // a write that landed during the query may not be in what was read, so don't keep it
+            if (invalidations.get() == generation) {
+                long expiresAt = System.currentTimeMillis() + plugin.getConfig().getInt("api.cache-seconds", 30) * 1000L;
+                evictIfFull();
+                for (UUID uuid : missing) {
+                    cache.put(uuid, new Cached(loaded.get(uuid), expiresAt));
+                }
+            }
+            result.putAll(loaded);
+            return result;
+        });
+    }
+
+    @Override
+    public Optional<UUID> findUuid(String playerName) {
+        PlayerNameIndex.Entry entry = databaseManager.getNameIndex().find(playerName);
+        return entry != null ? Optional.of(entry.getUuid()) : Optional.empty();
+    }
+
+    @Override
+    public List<String> completeNames(String prefix, int limit) {
+        return databaseManager.getNameIndex().complete(prefix, limit);
+    }
+
+    public void invalidate(UUID playerUuid) {
+        invalidations.incrementAndGet();
+        cache.remove(playerUuid);
+    }
+
+    private void evictIfFull() {
+        if (cache.size() < MAX_CACHED_PROFILES) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(cached -> cached.expiresAt <= now);
+        if (cache.size() >= MAX_CACHED_PROFILES) {
+            cache.clear();
+        }
+    }
+}
@@ -1,22 +1,54 @@
 package dk.noxitech.essentialssql.integration;
 
 import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
 import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.ShopRollup;
+import dk.noxitech.essentialssql.database.DatabaseManager.ShopTransaction;
+import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 public class ShopIntegrationManager implements Listener {
 
+    public static final String TYPE_SALE = "SALE";
+    public static final String TYPE_PURCHASE = "PURCHASE";
+
+    private static final long FLUSH_INTERVAL_TICKS = 20L;
+    private static final int MAX_ITEM_LENGTH = 64;
+    private static final int MAX_NAME_LENGTH = 16;
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long PRUNE_INTERVAL_TICKS = 20L * 60L * 60L * 24L;
+
     private final Main plugin;
     private final DatabaseManager databaseManager;
+    private final Queue<ShopTransaction> pendingInserts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingInsertCount = new AtomicInteger();
+    private final Map<RollupKey, ShopRollup> rollups = new ConcurrentHashMap<>();
+    private final boolean rollupsEnabled;
+    private BukkitTask flushTask;
+    private BukkitTask rollupTask;
+    private BukkitTask pruneTask;
 
     private Plugin chestShopPlugin;
     private Plugin auctionHousePlugin;
@@ -27,9 +59,36 @@ public class ShopIntegrationManager implements Listener {
         this.plugin = plugin;
         this.databaseManager = databaseManager;
 
+        plugin.getMetricsRegistry().registerGauge("pending_shop_transactions",
+            "Shop transactions waiting to be written to the ledger", pendingInsertCount::get);
+        plugin.getMetricsRegistry().registerGauge("pending_shop_rollups",
+            "Hourly shop rollups waiting to be written", rollups::size);
+
+        this.rollupsEnabled = plugin.getConfig().getBoolean("shop-integration.rollups.enabled", true);
+
         initializeShopPlugins();
     }
 
+    public void start() {
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush,
+            FLUSH_INTERVAL_TICKS, FLUSH_INTERVAL_TICKS);
+
+        if (rollupsEnabled) {
+            long rollupInterval = Math.max(1, plugin.getConfig().getInt("shop-integration.rollups.flush-interval", 60)) * 20L;
+            rollupTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushRollups,
+                rollupInterval, rollupInterval);
+        }
+
+        int deliveredDays = Math.max(1, plugin.getConfig().getInt("shop-integration.ledger.delivered-retention-days", 30));
+        int undeliveredDays = Math.max(1, plugin.getConfig().getInt("shop-integration.ledger.undelivered-retention-days", 180));
+        pruneTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,
+            () -> databaseManager.pruneShopTransactions(deliveredDays, undeliveredDays).thenAccept(pruned -> {
+                if (pruned > 0 && plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                    plugin.getLogger().info(String.format("Pruned %d old shop ledger entries", pruned));
+                }
+            }), 20L * 60L, PRUNE_INTERVAL_TICKS);
+    }
+
     private void initializeShopPlugins() {
         if (plugin.getConfig().getBoolean("shop-integration.chestshop.enabled", false)) {
             chestShopPlugin = Bukkit.getPluginManager().getPlugin("ChestShop");
@@ -67,6 +126,9 @@ public class ShopIntegrationManager implements Listener {
 
     private void setupChestShopIntegration() {
         try {
+            Bukkit.getPluginManager().registerEvents(new ChestShopTransactionListener(this,
+                plugin.getConfig().getBoolean("shop-integration.chestshop.offline-sales", true),
+                plugin.getConfig().getBoolean("shop-integration.chestshop.offline-buy-orders", true)), plugin);
             plugin.getLogger().info("ChestShop offline sales and buy orders integration ready");
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING, "Failed to setup ChestShop integration", e);
@@ -91,43 +153,211 @@ public class ShopIntegrationManager implements Listener {
 
     private void setupShopChestIntegration() {
         try {
+            // ShopChest is not on the compile classpath, so its event is bound by name
+            @SuppressWarnings("unchecked")
+            Class<? extends Event> eventClass = (Class<? extends Event>) Class.forName(
+                "de.epiceric.shopchest.event.ShopBuySellEvent", true, shopChestPlugin.getClass().getClassLoader());
+
+            boolean offlineSales = plugin.getConfig().getBoolean("shop-integration.shopchest.offline-sales", true);
+            boolean offlineBuyOrders = plugin.getConfig().getBoolean("shop-integration.shopchest.offline-buy-orders", true);
+
+            Bukkit.getPluginManager().registerEvent(eventClass, this, EventPriority.MONITOR,
+                (listener, event) -> {
+                    if (eventClass.isInstance(event)) {
+                        onShopChestTransaction(event, offlineSales, offlineBuyOrders);
+                    }
+                }, plugin, true);
             plugin.getLogger().info("ShopChest offline sales and buy orders integration ready");
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING, "Failed to setup ShopChest integration", e);
         }
     }
 
-    public void handleOfflineShopTransaction(UUID playerUuid, String playerName, String shopPlugin, String transactionType, double amount, String details) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                String shopData = String.format(
-                    "{\"type\":\"%s\",\"amount\":%.2f,\"details\":\"%s\",\"timestamp\":%d}",
-                    transactionType, amount, details, System.currentTimeMillis()
-                );
+    private void onShopChestTransaction(Event event, boolean offlineSales, boolean offlineBuyOrders) {
+        try {
+            Object shop = invoke(event, "getShop");
+            OfflinePlayer vendor = (OfflinePlayer) invoke(shop, "getVendor");
+            if (vendor == null) {
+                return;
+            }
+
+            boolean sale = "BUY".equals(String.valueOf(invoke(invoke(event, "getType"), "name")));
+            Object product = invoke(shop, "getProduct");
+            ItemStack stack = product instanceof ItemStack ? (ItemStack) product : (ItemStack) invoke(product, "getItemStack");
+            String item = stack != null ? stack.getType().name() : null;
+            int quantity = (Integer) invoke(event, "getNewAmount");
+            BigDecimal price = BigDecimal.valueOf((Double) invoke(event, "getNewPrice"));
+            String type = sale ? TYPE_SALE : TYPE_PURCHASE;
 
-                plugin.getLogger().info(String.format(
-                    "Processed offline %s transaction for %s: $%.2f (%s)",
-                    shopPlugin, playerName, amount, transactionType
-                ));
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, 
-                    String.format("Failed to handle offline shop transaction for %s", playerName), e);
+            recordRollup("ShopChest", vendor.getUniqueId(), type, price, item, quantity);
+
+            boolean adminShop = "ADMIN".equals(String.valueOf(invoke(invoke(shop, "getShopType"), "name")));
+            if (adminShop || vendor.isOnline() || (sale ? !offlineSales : !offlineBuyOrders)) {
+                return;
             }
-        });
+
+            Player client = (Player) invoke(event, "getPlayer");
+
+            handleOfflineShopTransaction(vendor.getUniqueId(), "ShopChest", type, price,
+                item, quantity, client != null ? client.getName() : null);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to record ShopChest transaction", e);
+        }
+    }
+
+    private static Object invoke(Object target, String method) throws ReflectiveOperationException {
+        Method handle = target.getClass().getMethod(method);
+        return handle.invoke(target);
     }
 
-    public void processPendingTransactions(UUID playerUuid, String playerName) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                plugin.getLogger().info(String.format(
-                    "Processing pending shop transactions for %s", playerName
-                ));
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, String.format("Failed to process pending transactions for %s", playerName), e);
+    /**
+     * Adds one trade to the in-memory rollup for its hour, owner, item and direction.
+     * Rollups are written on a timer, so raw trades never have to be scanned for statistics.
+     */
+    public void recordRollup(String shopPlugin, UUID ownerUuid, String transactionType, BigDecimal price, String item, int quantity) {
+        if (!rollupsEnabled || price == null) {
+            return;
+        }
+
+        long hourBucket = System.currentTimeMillis() / HOUR_MILLIS * HOUR_MILLIS / 1000L;
+        String itemName = item != null ? truncate(item, MAX_ITEM_LENGTH) : "UNKNOWN";
+        BigDecimal unitPrice = quantity > 0 ? price.divide(BigDecimal.valueOf(quantity), 4, RoundingMode.HALF_UP) : price;
+
+        rollups.merge(new RollupKey(hourBucket, shopPlugin, ownerUuid, itemName, transactionType),
+            new ShopRollup(hourBucket, shopPlugin, ownerUuid, itemName, transactionType, 1, quantity, price, unitPrice, unitPrice),
+            ShopRollup::merge);
+    }
+
+    /**
+     * Writes the accumulated rollups as one batched upsert that adds onto the stored counters.
+     * A failed batch is merged back and retried on the next flush.
+     */
+    public void flushRollups() {
+        List<ShopRollup> batch = new ArrayList<>();
+        for (RollupKey key : rollups.keySet()) {
+            ShopRollup rollup = rollups.remove(key);
+            if (rollup != null) {
+                batch.add(rollup);
             }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (databaseManager.upsertShopRollups(batch)) {
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Flushed %d shop rollups", batch.size()));
+            }
+        } else {
+            for (ShopRollup rollup : batch) {
+                rollups.merge(new RollupKey(rollup.getHourBucket(), rollup.getPluginName(), rollup.getOwnerUuid(),
+                    rollup.getItem(), rollup.getType()), rollup, ShopRollup::merge);
+            }
+        }
+    }
+
+    /**
+     * Queues a ledger entry for a player who was not online when a shop trade involved them.
+     * Entries are written in batches and shown to the player on their next join. The shop
+     * plugins move the money themselves, so entries are notifications only.
+     */
+    public void handleOfflineShopTransaction(UUID playerUuid, String shopPlugin, String transactionType, BigDecimal amount,
+                                             String item, int quantity, String counterparty) {
+        pendingInserts.add(new ShopTransaction(0, playerUuid, shopPlugin, transactionType, amount,
+            truncate(item, MAX_ITEM_LENGTH), quantity, truncate(counterparty, MAX_NAME_LENGTH), null));
+        pendingInsertCount.incrementAndGet();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * Writes all queued ledger entries. A failed batch is queued again and retried on the next flush.
+     */
+    public void flush() {
+        List<ShopTransaction> batch = new ArrayList<>();
+        ShopTransaction transaction;
+        while ((transaction = pendingInserts.poll()) != null) {
+            batch.add(transaction);
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (databaseManager.insertShopTransactions(batch)) {
+            pendingInsertCount.addAndGet(-batch.size());
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Recorded %d offline shop transactions", batch.size()));
+            }
+        } else {
+            pendingInserts.addAll(batch);
+        }
+    }
+
+    /**
+     * Loads every undelivered ledger entry for the player with one indexed query, shows them on
+     * the main thread and only then marks them delivered, so a player who leaves in between
+     * sees them on their next join instead of losing them.
+     */
+    public void processPendingTransactions(Player player) {
+        databaseManager.getPendingShopTransactions(player.getUniqueId()).thenAccept(transactions -> {
+            if (transactions.isEmpty()) {
+                return;
+            }
+
+            plugin.getMainThreadQueue().execute(() -> {
+                if (!player.isOnline()) {
+                    return;
+                }
+
+                deliverTransactions(player, transactions);
+                List<Long> ids = new ArrayList<>(transactions.size());
+                transactions.forEach(transaction -> ids.add(transaction.getId()));
+                databaseManager.markShopTransactionsDelivered(ids);
+            });
         });
     }
 
+    private void deliverTransactions(Player player, List<ShopTransaction> transactions) {
+        Economy economy = plugin.getEconomy();
+        List<String> lines = new ArrayList<>();
+        for (ShopTransaction transaction : transactions) {
+            String amount = economy != null
+                ? economy.format(transaction.getAmount().doubleValue())
+                : transaction.getAmount().toPlainString();
+
+            String key = TYPE_SALE.equals(transaction.getType()) ? "messages.shop-offline-sale"
+                : TYPE_PURCHASE.equals(transaction.getType()) ? "messages.shop-offline-purchase"
+                : "messages.shop-offline-credit";
+            String line = plugin.getConfig().getString(key, "");
+            if (!line.isEmpty()) {
+                lines.add(line
+                    .replace("{plugin}", transaction.getPluginName())
+                    .replace("{counterparty}", transaction.getCounterparty() != null ? transaction.getCounterparty() : "Someone")
+                    .replace("{quantity}", String.valueOf(transaction.getQuantity()))
+                    .replace("{item}", transaction.getItem() != null ? transaction.getItem().toLowerCase().replace('_', ' ') : "items")
+                    .replace("{amount}", amount));
+            }
+        }
+
+        if (!lines.isEmpty()) {
+            String header = plugin.getConfig().getString("messages.shop-offline-header", "");
+            if (!header.isEmpty()) {
+                player.sendMessage(plugin.colorize(header));
+            }
+            for (String line : lines) {
+                player.sendMessage(plugin.colorize(line));
+            }
+        }
+
+        if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+            plugin.getLogger().info(String.format("Delivered %d shop transactions to %s", transactions.size(), player.getName()));
+        }
+    }
+
     public boolean hasActiveIntegrations() {
         return (chestShopPlugin != null && chestShopPlugin.isEnabled()) ||
                (auctionHousePlugin != null && auctionHousePlugin.isEnabled()) ||
@@ -157,7 +387,25 @@ public class ShopIntegrationManager implements Listener {
         }
     }
 
+    private record RollupKey(long hourBucket, String pluginName, UUID ownerUuid, String item, String type) {
+    }
+
     public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (rollupTask != null) {
+            rollupTask.cancel();
+            rollupTask = null;
+        }
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
+        }
+        flush();
+        flushRollups();
+
         plugin.getLogger().info("Shop integrations shut down");
     }
 }
\ No newline at end of file
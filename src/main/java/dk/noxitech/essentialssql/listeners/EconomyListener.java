@@ -1,120 +1,243 @@
 package dk.noxitech.essentialssql.listeners;
 
 import dk.noxitech.essentialssql.Main;
-import dk.noxitech.essentialssql.manager.UserDataManager;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.BalanceDelta;
+import dk.noxitech.essentialssql.database.DatabaseManager.BalanceEntry;
+import dk.noxitech.essentialssql.database.DatabaseManager.WriteKind;
+import net.ess3.api.events.UserBalanceUpdateEvent;
 import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerCommandPreprocessEvent;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.util.Arrays;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks balance changes through EssentialsX's {@link UserBalanceUpdateEvent}, which
+ * fires for every change regardless of source (commands, shops, other plugins, the
+ * console) and for offline users too. Updates are coalesced per player and flushed
+ * to the balance cache in batches, so a burst of transactions costs one row write.
+ * <p>
+ * The new balance of an offline user is computed from this server's copy of their
+ * userdata, which may be stale, so for them only the change is recorded and added to
+ * the cached balance in SQL. Their next join on any server loads the result. If the player
+ * is online on another server instead, that server's next write of their balance adds the
+ * change to the stored value and deposits it into their live balance there, so the write
+ * does not overwrite it; the change is announced so that happens right away.
+ */
 public class EconomyListener implements Listener {
 
+    private static final long FLUSH_INTERVAL_TICKS = 20L;
+    private static final long PRUNE_INTERVAL_TICKS = 20L * 60L * 60L;
+    private static final int DELTA_RETENTION_DAYS = 7;
+
     private final Main plugin;
-    private final UserDataManager userDataManager;
+    private final DatabaseManager databaseManager;
+    private final Map<UUID, BalanceEntry> pending = new ConcurrentHashMap<>();
+    private final Map<UUID, BalanceEntry> settling = new ConcurrentHashMap<>();
+    private final Queue<BalanceDelta> pendingDeltas = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingDeltaCount = new AtomicInteger();
+    private BukkitTask flushTask;
+    private BukkitTask pruneTask;
+
+    public EconomyListener(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
 
-    private final List<String> economyCommands = Arrays.asList(
-        "pay", "money", "balance", "bal", "eco", "economy", 
-        "give", "take", "set", "essentials:pay", "essentials:eco",
-        "essentials:balance", "essentials:money"
-    );
+        plugin.getMetricsRegistry().registerGauge("pending_balance_updates",
+            "Balance changes waiting to be written to the balance cache", pending::size);
+        plugin.getMetricsRegistry().registerGauge("pending_balance_deltas",
+            "Offline balance changes waiting to be added to the balance cache", pendingDeltaCount::get);
+    }
 
-    public EconomyListener(Main plugin, UserDataManager userDataManager) {
-        this.plugin = plugin;
-        this.userDataManager = userDataManager;
+    public void start() {
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flush,
+            FLUSH_INTERVAL_TICKS, FLUSH_INTERVAL_TICKS);
+        pruneTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+            () -> databaseManager.pruneBalanceDeltas(DELTA_RETENTION_DAYS), PRUNE_INTERVAL_TICKS, PRUNE_INTERVAL_TICKS);
     }
 
-    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
-    public void onEconomyCommand(PlayerCommandPreprocessEvent event) {
-        String command = event.getMessage().toLowerCase();
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBalanceUpdate(UserBalanceUpdateEvent event) {
+        if (!plugin.getSettings().isBalanceTopEnabled()) {
+            return;
+        }
+
+        Player player = event.getPlayer();
+        if (player == null || event.getNewBalance() == null) {
+            return;
+        }
 
-        boolean isEconomyCommand = false;
-        for (String ecoCmd : economyCommands) {
-            if (command.startsWith("/" + ecoCmd)) {
-                isEconomyCommand = true;
-                break;
+        if (!player.isOnline()) {
+            BigDecimal change = event.getOldBalance() != null
+                ? event.getNewBalance().subtract(event.getOldBalance())
+                : BigDecimal.ZERO;
+            if (change.signum() != 0) {
+                pendingDeltas.add(new BalanceDelta(UUID.randomUUID().toString(), player.getUniqueId(), change));
+                pendingDeltaCount.incrementAndGet();
             }
+            return;
         }
 
-        if (!isEconomyCommand) {
+        String name = player.getName() != null ? player.getName() : "Unknown";
+        pending.put(player.getUniqueId(), new BalanceEntry(player.getUniqueId(), name, event.getNewBalance().doubleValue()));
+    }
+
+    /**
+     * Receives balance writes announced by other servers. If the player is online here, their
+     * balance is written at the next flush when offline changes are waiting for it.
+     * Main thread only.
+     */
+    public void onRemoteWrite(UUID playerUuid, WriteKind kind) {
+        if (kind != WriteKind.BALANCE || !plugin.getSettings().isBalanceTopEnabled()) {
             return;
         }
 
-        Player player = event.getPlayer();
+        Player player = plugin.getServer().getPlayer(playerUuid);
+        Economy economy = plugin.getEconomy();
+        if (player == null || economy == null) {
+            return;
+        }
+        settling.put(playerUuid, new BalanceEntry(playerUuid, player.getName(), economy.getBalance(player)));
+    }
 
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                syncPlayerBalance(player);
+    /**
+     * Writes all coalesced balance changes. Entries that fail to write are queued
+     * again unless a newer balance for the same player arrived in the meantime.
+     */
+    public void flush() {
+        flushDeltas();
+
+        List<BalanceEntry> batch = drain(pending);
+        if (!batch.isEmpty()) {
+            Map<UUID, BigDecimal> added = databaseManager.updateBalanceCaches(batch);
+            if (added != null) {
+                deliver(added);
+                if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                    plugin.getLogger().info(String.format("Flushed %d balance changes to the balance cache", batch.size()));
+                }
+            } else {
+                for (BalanceEntry entry : batch) {
+                    pending.putIfAbsent(entry.getUuid(), entry);
+                }
+            }
+        }
 
-                syncTargetPlayerBalance(command, player);
+        List<BalanceEntry> settle = drain(settling);
+        // players written above already had their offline changes added
+        Set<UUID> written = new HashSet<>();
+        batch.forEach(entry -> written.add(entry.getUuid()));
+        settle.removeIf(entry -> written.contains(entry.getUuid()) || pending.containsKey(entry.getUuid()));
+        if (!settle.isEmpty()) {
+            Map<UUID, BigDecimal> added = databaseManager.settleBalanceDeltas(settle);
+            if (added != null) {
+                deliver(added);
+            } else {
+                for (BalanceEntry entry : settle) {
+                    settling.putIfAbsent(entry.getUuid(), entry);
+                }
             }
-        }.runTaskLater(plugin, 2L);
+        }
     }
 
-    private void syncPlayerBalance(Player player) {
-        try {
-            if (plugin.getServer().getPluginManager().getPlugin("Vault") != null) {
-                Economy economy = plugin.getEconomy();
-                if (economy != null) {
-                    double balance = economy.getBalance(player);
-                    userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), balance);
-
-                    if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
-                        plugin.getLogger().info("Economy command: Synced balance " + balance + " for player " + player.getName());
-                    }
-                }
+    private static List<BalanceEntry> drain(Map<UUID, BalanceEntry> entries) {
+        List<BalanceEntry> batch = new ArrayList<>(entries.size());
+        for (UUID uuid : entries.keySet()) {
+            BalanceEntry entry = entries.remove(uuid);
+            if (entry != null) {
+                batch.add(entry);
             }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to sync balance after economy command for " + player.getName() + ": " + e.getMessage());
         }
+        return batch;
     }
 
-    private void syncTargetPlayerBalance(String command, Player sender) {
-        try {
-            String[] parts = command.split(" ");
-
-            if (parts.length >= 3) {
-                String targetPlayerName = null;
-
-                if (command.contains("pay ")) {
-                    targetPlayerName = parts[1];
-                } else if (command.contains("eco ") && parts.length >= 4) {
-                    if (parts[1].equals("give") || parts[1].equals("take") || parts[1].equals("set")) {
-                        targetPlayerName = parts[2];
-                    }
-                } else if (command.contains("essentials:pay ")) {
-                    targetPlayerName = parts[1];
-                } else if (command.contains("essentials:eco ") && parts.length >= 4) {
-                    if (parts[1].equals("give") || parts[1].equals("take") || parts[1].equals("set")) {
-                        targetPlayerName = parts[2];
-                    }
-                }
+    /**
+     * Adds offline changes that were just added to the stored balances to the live balances
+     * of those players that are still online here.
+     */
+    private void deliver(Map<UUID, BigDecimal> added) {
+        if (added.isEmpty()) {
+            return;
+        }
 
-                if (targetPlayerName != null) {
-                    Player targetPlayer = plugin.getServer().getPlayer(targetPlayerName);
-                    if (targetPlayer != null && targetPlayer.isOnline()) {
-                        if (plugin.getServer().getPluginManager().getPlugin("Vault") != null) {
-                            Economy economy = plugin.getEconomy();
-                            if (economy != null) {
-                                double balance = economy.getBalance(targetPlayer);
-                                userDataManager.updatePlayerBalance(targetPlayer.getUniqueId(), targetPlayer.getName(), balance);
-
-                                if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
-                                    plugin.getLogger().info("Economy command: Synced target balance " + balance + " for player " + targetPlayer.getName());
-                                }
-                            }
-                        }
-                    }
-                }
+        plugin.getMainThreadQueue().execute(() -> added.forEach((uuid, change) -> {
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player != null) {
+                addToBalance(plugin, player, change);
             }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to sync target player balance: " + e.getMessage());
+        }));
+    }
+
+    /**
+     * Deposits or withdraws a change through Vault. The balance event this fires writes the
+     * new balance again, which already holds the change. Main thread only.
+     */
+    static void addToBalance(Main plugin, Player player, BigDecimal change) {
+        Economy economy = plugin.getEconomy();
+        if (economy == null || change.signum() == 0) {
+            return;
+        }
+
+        EconomyResponse response = change.signum() > 0
+            ? economy.depositPlayer(player, change.doubleValue())
+            : economy.withdrawPlayer(player, change.negate().doubleValue());
+        if (!response.transactionSuccess()) {
+            plugin.getLogger().warning(String.format("Failed to add offline balance change %s to %s: %s",
+                change.toPlainString(), player.getName(), response.errorMessage));
+        } else if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+            plugin.getLogger().info(String.format("Added offline balance change %s to %s", change.toPlainString(), player.getName()));
+        }
+    }
+
+    /**
+     * Adds the queued offline balance changes to the balance cache. A failed batch is queued
+     * again with the same keys, so a batch that did commit is not applied twice.
+     */
+    private void flushDeltas() {
+        if (pendingDeltas.isEmpty()) {
+            return;
+        }
+
+        List<BalanceDelta> batch = new ArrayList<>();
+        BalanceDelta delta;
+        while ((delta = pendingDeltas.poll()) != null) {
+            batch.add(delta);
+        }
+
+        if (databaseManager.applyBalanceDeltas(batch)) {
+            pendingDeltaCount.addAndGet(-batch.size());
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Applied %d offline balance changes to the balance cache", batch.size()));
+            }
+        } else {
+            pendingDeltas.addAll(batch);
+        }
+    }
+
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
         }
+        flush();
     }
-}
\ No newline at end of file
+}
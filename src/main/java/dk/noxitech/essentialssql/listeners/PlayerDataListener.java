@@ -1,24 +1,38 @@
 package dk.noxitech.essentialssql.listeners;
 
 import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
 import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.integration.EssentialsBridge;
+import dk.noxitech.essentialssql.integration.ShopIntegrationManager;
 import dk.noxitech.essentialssql.manager.UserDataManager;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class PlayerDataListener implements Listener {
 
+    private static final long LEGACY_RELOAD_DELAY_TICKS = 40L;
+
     private final Main plugin;
     private final UserDataManager userDataManager;
     private final DatabaseManager databaseManager;
+    private final Map<UUID, CompletableFuture<Boolean>> prefetched = new ConcurrentHashMap<>();
 
     public PlayerDataListener(Main plugin, UserDataManager userDataManager) {
         this.plugin = plugin;
@@ -26,21 +40,61 @@ public class PlayerDataListener implements Listener {
         this.databaseManager = plugin.getDatabaseManager();
     }
 
-    @EventHandler(priority = EventPriority.HIGHEST)
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        if (!plugin.getConfig().getBoolean("settings.load-on-join", true)) {
+    /**
+     * Starts loading while the player is still logging in, on the async login thread, and
+     * waits up to {@code settings.prelogin-timeout-ms} so the data is usually ready by the
+     * time the player joins.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        PluginSettings settings = plugin.getSettings();
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED
+                || !settings.isLoadOnJoin() || !settings.isDirectEssentialsSync()) {
             return;
         }
 
+        CompletableFuture<Boolean> loadFuture = userDataManager.loadPlayerData(event.getUniqueId(), event.getName());
+        try {
+            loadFuture.get(settings.getPreloginTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (settings.shouldLog(DebugCategory.GENERAL)) {
+                plugin.getLogger().info("[DEBUG] Data for " + event.getName() + " not ready at login, it will be applied after join");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // reported when the join handler picks the future up
+        }
+
+        prefetched.put(event.getUniqueId(), loadFuture);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            prefetched.remove(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        PluginSettings settings = plugin.getSettings();
         Player player = event.getPlayer();
+        CompletableFuture<Boolean> prefetch = prefetched.remove(player.getUniqueId());
+        if (!settings.isLoadOnJoin()) {
+            deliverShopTransactions(player);
+            return;
+        }
 
         String loadingMessage = plugin.getConfig().getString("messages.data-loading", "&aLoading your data...");
         if (!loadingMessage.isEmpty()) {
             player.sendMessage(plugin.colorize(loadingMessage));
         }
 
-        if (plugin.getConfig().getBoolean("settings.async-operations", true)) {
-            CompletableFuture<Boolean> loadFuture = userDataManager.loadPlayerData(player.getUniqueId(), player.getName());
+        if (settings.isAsyncOperations() || prefetch != null) {
+            CompletableFuture<Boolean> loadFuture = prefetch != null
+                ? prefetch
+                : userDataManager.loadPlayerData(player.getUniqueId(), player.getName());
 
             loadFuture.whenComplete((success, throwable) -> {
                 if (throwable != null) {
@@ -48,36 +102,21 @@ public class PlayerDataListener implements Listener {
 
                     String errorMessage = plugin.getConfig().getString("messages.data-load-failed", "&cFailed to load your data!");
                     if (!errorMessage.isEmpty()) {
-                        new BukkitRunnable() {
-                            @Override
-                            public void run() {
-                                if (player.isOnline()) {
-                                    player.sendMessage(plugin.colorize(errorMessage));
-                                }
+                        plugin.getMainThreadQueue().execute(() -> {
+                            if (player.isOnline()) {
+                                player.sendMessage(plugin.colorize(errorMessage));
                             }
-                        }.runTask(plugin);
+                        });
                     }
                     return;
                 }
 
                 if (success) {
                     plugin.getLogger().info("Successfully loaded data for player " + player.getName());
-
-                    new BukkitRunnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                reloadEssentialsUserData(player);
-
-                                loadPlayerBalanceFromDatabase(player);
-                            } catch (Exception e) {
-                                plugin.getLogger().warning("Failed to reload Essentials data for " + player.getName() + ": " + e.getMessage());
-                            }
-                        }
-                    }.runTaskLater(plugin, 40L);
-
+                    scheduleApplyLoadedData(player);
                 } else {
                     plugin.getLogger().info("No existing data found for new player " + player.getName());
+                    deliverShopTransactions(player);
                 }
             });
 
@@ -86,22 +125,10 @@ public class PlayerDataListener implements Listener {
                 boolean success = userDataManager.loadPlayerData(player.getUniqueId(), player.getName()).join();
                 if (success) {
                     plugin.getLogger().info("Successfully loaded data for player " + player.getName());
-
-                    new BukkitRunnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                reloadEssentialsUserData(player);
-
-                                loadPlayerBalanceFromDatabase(player);
-                            } catch (Exception e) {
-                                plugin.getLogger().warning("Failed to reload Essentials data for " + player.getName() + ": " + e.getMessage());
-                            }
-                        }
-                    }.runTaskLater(plugin, 40L);
-
+                    scheduleApplyLoadedData(player);
                 } else {
                     plugin.getLogger().info("No existing data found for new player " + player.getName());
+                    deliverShopTransactions(player);
                 }
             } catch (Exception e) {
                 plugin.getLogger().severe("Error loading data for player " + player.getName() + ": " + e.getMessage());
@@ -114,22 +141,57 @@ public class PlayerDataListener implements Listener {
         }
     }
 
+    /**
+     * Applies freshly installed userdata: reloads the Essentials user, which may be cached
+     * from an earlier session, then syncs the balance and delivers shop transactions.
+     * With direct sync this happens on the next main thread slot; otherwise after the
+     * old fixed delay.
+     */
+    private void scheduleApplyLoadedData(Player player) {
+        Runnable apply = () -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            try {
+                reloadEssentialsUserData(player);
+
+                loadPlayerBalanceFromDatabase(player)
+                    .whenComplete((ignored, balanceError) -> deliverShopTransactions(player));
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to reload Essentials data for " + player.getName() + ": " + e.getMessage());
+            }
+        };
+
+        if (plugin.getSettings().isDirectEssentialsSync()) {
+            plugin.getMainThreadQueue().execute(apply);
+        } else {
+            plugin.getServer().getScheduler().runTaskLater(plugin, apply, LEGACY_RELOAD_DELAY_TICKS);
+        }
+    }
+
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerQuit(PlayerQuitEvent event) {
-        if (!plugin.getConfig().getBoolean("settings.save-on-quit", true)) {
-            if (plugin.getConfig().getBoolean("debug.enabled", true)) {
+        PluginSettings settings = plugin.getSettings();
+        if (!settings.isSaveOnQuit()) {
+            if (settings.shouldLog(DebugCategory.GENERAL)) {
                 plugin.getLogger().info("[DEBUG] Save on quit disabled - skipping save for " + event.getPlayer().getName());
             }
             return;
         }
 
         Player player = event.getPlayer();
-        if (plugin.getConfig().getBoolean("debug.enabled", true)) {
+        if (settings.shouldLog(DebugCategory.GENERAL)) {
             plugin.getLogger().info("[DEBUG] Player quit event triggered for " + player.getName() + " - starting data save");
         }
 
-        if (plugin.getConfig().getBoolean("settings.async-operations", true)) {
-            if (plugin.getConfig().getBoolean("debug.enabled", true)) {
+        if (settings.isDirectEssentialsSync()) {
+            plugin.getEssentialsBridge().flushUser(player.getUniqueId());
+        }
+
+        if (settings.isAsyncOperations()) {
+            // read through Vault here, the save completes on a pool thread
+            Double quitBalance = readBalance(player);
+            if (settings.shouldLog(DebugCategory.GENERAL)) {
                 plugin.getLogger().info("[DEBUG] Starting async save for " + player.getName());
             }
             CompletableFuture<Boolean> saveFuture = userDataManager.savePlayerData(player.getUniqueId(), player.getName());
@@ -143,7 +205,9 @@ public class PlayerDataListener implements Listener {
                 if (success) {
                     plugin.getLogger().info("Successfully saved data for player " + player.getName());
 
-                    updatePlayerBalanceCache(player);
+                    if (quitBalance != null) {
+                        userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), quitBalance);
+                    }
                 } else {
                     plugin.getLogger().warning("Failed to save data for player " + player.getName());
                 }
@@ -166,39 +230,32 @@ public class PlayerDataListener implements Listener {
     }
 
     private void reloadEssentialsUserData(Player player) {
-        try {
-            org.bukkit.plugin.Plugin essentialsPlugin = plugin.getServer().getPluginManager().getPlugin("Essentials");
-            if (essentialsPlugin != null && essentialsPlugin.isEnabled()) {
-                if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
-                    plugin.getLogger().info("Reloading Essentials data for player " + player.getName());
-                }
-            } else {
-                plugin.getLogger().warning("Essentials plugin not found or not enabled!");
-            }
+        EssentialsBridge bridge = plugin.getEssentialsBridge();
+        if (!bridge.isAvailable()) {
+            plugin.getLogger().warning("Essentials plugin not found or not enabled!");
+            return;
+        }
 
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to reload Essentials user data: " + e.getMessage());
+        if (plugin.getSettings().shouldLog(DebugCategory.FILE)) {
+            plugin.getLogger().info("Reloading Essentials data for player " + player.getName());
         }
+        bridge.reloadUser(player.getUniqueId());
     }
 
-    private void updatePlayerBalanceCache(Player player) {
+    /**
+     * The player's balance through Vault, or null without an economy. Main thread only.
+     */
+    private Double readBalance(Player player) {
         try {
             org.bukkit.plugin.Plugin essentialsPlugin = plugin.getServer().getPluginManager().getPlugin("Essentials");
-            if (essentialsPlugin != null && essentialsPlugin.isEnabled()) {
-                double balance = 0.0;
-
-                if (plugin.getServer().getPluginManager().getPlugin("Vault") != null) {
-                    Economy economy = plugin.getEconomy();
-                    if (economy != null) {
-                        balance = economy.getBalance(player);
-                    }
-                }
-
-                userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), balance);
+            Economy economy = plugin.getEconomy();
+            if (essentialsPlugin != null && essentialsPlugin.isEnabled() && economy != null) {
+                return economy.getBalance(player);
             }
         } catch (Exception e) {
-            plugin.getLogger().warning("Failed to update balance cache: " + e.getMessage());
+            plugin.getLogger().warning("Failed to read balance for " + player.getName() + ": " + e.getMessage());
         }
+        return null;
     }
 
     private void syncPlayerBalance(Player player) {
@@ -209,9 +266,13 @@ public class PlayerDataListener implements Listener {
                 Economy economy = plugin.getEconomy();
                 if (economy != null) {
                     balance = economy.getBalance(player);
-                    userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), balance);
+                    userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), balance).thenAcceptAsync(added -> {
+                        if (added != null && player.isOnline()) {
+                            EconomyListener.addToBalance(plugin, player, added);
+                        }
+                    }, plugin.getMainThreadQueue());
 
-                    if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
+                    if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
                         plugin.getLogger().info("Synced balance " + balance + " for player " + player.getName());
                     }
                 }
@@ -221,44 +282,49 @@ public class PlayerDataListener implements Listener {
         }
     }
 
-    private void loadPlayerBalanceFromDatabase(Player player) {
-        try {
-            databaseManager.getTopBalances(1000).whenComplete((balances, throwable) -> {
-                if (throwable != null) {
-                    plugin.getLogger().warning("Failed to load balance for " + player.getName() + ": " + throwable.getMessage());
-                    return;
-                }
+    private void deliverShopTransactions(Player player) {
+        ShopIntegrationManager shopIntegrationManager = plugin.getShopIntegrationManager();
+        if (shopIntegrationManager != null) {
+            shopIntegrationManager.processPendingTransactions(player);
+        }
+    }
 
-                for (DatabaseManager.BalanceEntry entry : balances) {
-                    if (entry.getUuid().equals(player.getUniqueId())) {
-                        if (plugin.getServer().getPluginManager().getPlugin("Vault") != null) {
-                            Economy economy = plugin.getEconomy();
-                            if (economy != null) {
-                                double currentBalance = economy.getBalance(player);
-                                double databaseBalance = entry.getBalance();
-
-                                if (Math.abs(currentBalance - databaseBalance) > 0.01) {
-                                    economy.withdrawPlayer(player, currentBalance);
-                                    economy.depositPlayer(player, databaseBalance);
-
-                                    if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
-                                        plugin.getLogger().info("Loaded balance " + databaseBalance + " from database for player " + player.getName());
-                                    }
-                                }
-                            }
-                        }
-                        return;
-                    }
-                }
+    /**
+     * Looks up the player's cached balance off the main thread and applies it through
+     * Vault on the main thread queue.
+     */
+    private CompletableFuture<?> loadPlayerBalanceFromDatabase(Player player) {
+        Economy economy = plugin.getEconomy();
+        if (economy == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return databaseManager.loadBalance(player.getUniqueId()).thenAcceptAsync(databaseBalance -> {
+            if (!player.isOnline()) {
+                return;
+            }
 
-                if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
+            if (databaseBalance == null) {
+                if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
                     plugin.getLogger().info("No balance found in database for player " + player.getName() + ", keeping current balance");
                 }
                 syncPlayerBalance(player);
-            });
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to load balance from database for " + player.getName() + ": " + e.getMessage());
-        }
+                return;
+            }
+
+            double currentBalance = economy.getBalance(player);
+            if (Math.abs(currentBalance - databaseBalance) > 0.01) {
+                economy.withdrawPlayer(player, currentBalance);
+                economy.depositPlayer(player, databaseBalance);
+
+                if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                    plugin.getLogger().info("Loaded balance " + databaseBalance + " from database for player " + player.getName());
+                }
+            }
+        }, plugin.getMainThreadQueue()).exceptionally(throwable -> {
+            plugin.getLogger().warning("Failed to load balance from database for " + player.getName() + ": " + throwable.getMessage());
+            return null;
+        });
     }
 
     private void savePlayerBalanceToDatabase(Player player) {
@@ -269,7 +335,7 @@ public class PlayerDataListener implements Listener {
                     double balance = economy.getBalance(player);
                     userDataManager.updatePlayerBalance(player.getUniqueId(), player.getName(), balance);
 
-                    if (plugin.getConfig().getBoolean("debug.log-database-operations", false)) {
+                    if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
                         plugin.getLogger().info("Saved balance " + balance + " to database for player " + player.getName());
                     }
                 }
@@ -0,0 +1,92 @@
+package dk.noxitech.essentialssql.manager;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.ArchiveChunk;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Moves players inactive for more than {@code archive.inactive-days} days out of
+ * {@code user_data} into the compressed {@code user_data_archive} table, so the hot table
+ * and its indexes only hold players who actually play. Unlike cleanup nothing is lost: a
+ * returning player is restored on their next join by {@link UserDataManager#loadPlayerData}.
+ * <p>
+ * Each run walks the inactive rows in id order, one transaction per batch, and stops at the
+ * end of the table or when the plugin shuts down.
+ */
+public class ArchiveManager {
+
+    private final Main plugin;
+    private final DatabaseManager databaseManager;
+    private final AtomicLong archivedPlayers = new AtomicLong();
+    private volatile boolean running;
+    private BukkitTask task;
+
+    public ArchiveManager(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        plugin.getMetricsRegistry().registerGauge("archived_players", "Players moved to the archive table since startup",
+            archivedPlayers::get);
+    }
+
+    public void start() {
+        FileConfiguration config = plugin.getConfig();
+        if (!config.getBoolean("archive.enabled", false)) {
+            return;
+        }
+
+        running = true;
+        long intervalTicks = Math.max(1, config.getInt("archive.interval", 6)) * 20L * 3600L;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::run, 20L * 60L, intervalTicks);
+    }
+
+    /**
+     * Archives every eligible player. Runs on the calling thread.
+     */
+    public void run() {
+        FileConfiguration config = plugin.getConfig();
+        int days = Math.max(1, config.getInt("archive.inactive-days", 90));
+        int batchSize = Math.max(1, config.getInt("archive.batch-size", 500));
+
+        long lastId = 0;
+        long total = 0;
+        try {
+            while (running) {
+                ArchiveChunk chunk = databaseManager.archiveInactiveChunk(days, lastId, batchSize);
+                total += chunk.getArchived();
+                archivedPlayers.addAndGet(chunk.getArchived());
+
+                if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                    plugin.getLogger().info(String.format("Archived %d of %d inactive players up to id %d",
+                        chunk.getArchived(), chunk.getFetched(), chunk.getLastId()));
+                }
+
+                if (chunk.getFetched() < batchSize) {
+                    break;
+                }
+                lastId = chunk.getLastId();
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Archiving inactive players failed, retrying on the next run", e);
+        }
+
+        if (total > 0) {
+            plugin.getLogger().info(String.format("Moved %d players inactive for %d days to the archive", total, days));
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package dk.noxitech.essentialssql.manager;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.HistoryRow;
+import dk.noxitech.essentialssql.database.DatabaseManager.WriteKind;
+import dk.noxitech.essentialssql.utils.BinaryDelta;
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last {@code history.versions} saved versions of every player's userdata in
+ * {@code user_data_history}, so a corrupted or griefed profile can be rolled back.
+ * <p>
+ * Saves only queue the data; a background task writes the queue in one batch every
+ * {@code history.flush-interval} seconds. Version {@code 1 + n * snapshot-interval} is
+ * stored as a gzipped full copy and every other version as a {@link BinaryDelta} against
+ * the version before it, so rebuilding any version reads at most one snapshot and
+ * {@code snapshot-interval - 1} deltas. The newest version per player is cached to encode
+ * the next delta without reading it back. Versions are unique per player; if another server
+ * added versions since the cached one, the queued data is encoded again against the stored
+ * history before it is written.
+ */
+public class HistoryManager {
+
+    private static final int MAX_CACHED_HEADS = 1000;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final Main plugin;
+    private final DatabaseManager databaseManager;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<UUID> staleHeads = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, Head> heads = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Head> eldest) {
+            return size() > MAX_CACHED_HEADS;
+        }
+    };
+    private volatile BukkitTask flushTask;
+
+    public HistoryManager(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        plugin.getMetricsRegistry().registerGauge("history_queue_depth", "Saved versions waiting to be written to the history", pending::get);
+    }
+
+    private static final class Pending {
+        private final UUID uuid;
+        private final String data;
+        private final long savedAt;
+
+        private Pending(UUID uuid, String data, long savedAt) {
+            this.uuid = uuid;
+            this.data = data;
+            this.savedAt = savedAt;
+        }
+    }
+
+    private static final class Head {
+        private final int version;
+        private final byte[] data;
+
+        private Head(int version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A rebuilt history version in plain YAML.
+     */
+    public static final class Version {
+        private final int version;
+        private final long savedAt;
+        private final String data;
+
+        private Version(int version, long savedAt, String data) {
+            this.version = version;
+            this.savedAt = savedAt;
+            this.data = data;
+        }
+
+        public int getVersion() { return version; }
+        public long getSavedAt() { return savedAt; }
+        public String getData() { return data; }
+    }
+
+    public boolean isEnabled() {
+        return plugin.getConfig().getBoolean("history.enabled", false);
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long intervalTicks = Math.max(1, plugin.getConfig().getInt("history.flush-interval", 30)) * 20L;
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flush, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Queues a saved payload, as stored in the {@code data} column, for the history. Never blocks.
+     */
+    public void record(UUID playerUuid, String data) {
+        if (flushTask == null) {
+            return;
+        }
+
+        queue.add(new Pending(playerUuid, data, System.currentTimeMillis()));
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Forgets the cached newest version of a player whose data another server saved, so the
+     * next version is numbered after what that server wrote. Never blocks.
+     */
+    public void invalidate(UUID playerUuid, WriteKind kind) {
+        if (kind != WriteKind.BALANCE) {
+            staleHeads.add(playerUuid);
+        }
+    }
+
+    /**
+     * Writes everything queued so far as new versions. Runs on the calling thread.
+     */
+    public synchronized void flush() {
+        UUID stale;
+        while ((stale = staleHeads.poll()) != null) {
+            heads.remove(stale);
+        }
+
+        if (pending.get() == 0) {
+            return;
+        }
+
+        Map<UUID, List<Pending>> byPlayer = new LinkedHashMap<>();
+        Pending entry;
+        while ((entry = queue.poll()) != null) {
+            pending.decrementAndGet();
+            byPlayer.computeIfAbsent(entry.uuid, uuid -> new ArrayList<>()).add(entry);
+        }
+
+        // a player another server added versions for in the meantime is encoded again against what it stored
+        for (int attempt = 1; !byPlayer.isEmpty(); attempt++) {
+            Set<UUID> conflicted = writeVersions(byPlayer);
+            byPlayer.keySet().retainAll(conflicted);
+            byPlayer.keySet().forEach(heads::remove);
+            if (!byPlayer.isEmpty() && attempt >= MAX_WRITE_ATTEMPTS) {
+                plugin.getLogger().warning(String.format("Skipped history versions for %d players whose history kept changing",
+                    byPlayer.size()));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Encodes and writes queued versions, oldest first per player.
+     *
+     * @return the players whose versions were not written because the stored history moved on
+     */
+    private Set<UUID> writeVersions(Map<UUID, List<Pending>> byPlayer) {
+        FileConfiguration config = plugin.getConfig();
+        int keepVersions = Math.max(1, config.getInt("history.versions", 20));
+        int snapshotInterval = Math.max(1, config.getInt("history.snapshot-interval", 10));
+
+        List<HistoryRow> rows = new ArrayList<>();
+        Map<UUID, Integer> pruneBelow = new HashMap<>();
+        Map<UUID, Head> previousHeads = new HashMap<>();
+
+        for (Map.Entry<UUID, List<Pending>> player : byPlayer.entrySet()) {
+            UUID uuid = player.getKey();
+            for (Pending entry : player.getValue()) {
+                try {
+                    byte[] data = decode(entry.data);
+                    Head head = heads.containsKey(uuid) ? heads.get(uuid) : loadHead(uuid);
+                    if (head != null && Arrays.equals(head.data, data)) {
+                        continue;
+                    }
+
+                    int version = head != null ? head.version + 1 : 1;
+                    boolean snapshot = head == null || (version - 1) % snapshotInterval == 0;
+                    byte[] payload = snapshot ? gzip(data) : BinaryDelta.encode(head.data, data);
+                    rows.add(new HistoryRow(uuid, version, snapshot, payload, entry.savedAt));
+
+                    if (!previousHeads.containsKey(uuid)) {
+                        previousHeads.put(uuid, head);
+                    }
+                    heads.put(uuid, new Head(version, data));
+
+                    // keep the snapshot the oldest kept version is rebuilt from
+                    int oldestKept = version - keepVersions + 1;
+                    if (oldestKept > 1) {
+                        pruneBelow.put(uuid, (oldestKept - 1) / snapshotInterval * snapshotInterval + 1);
+                    }
+                } catch (IOException | IllegalArgumentException | SQLException e) {
+                    plugin.getLogger().log(Level.WARNING, "Skipped a history version for " + uuid, e);
+                }
+            }
+        }
+
+        if (rows.isEmpty()) {
+            return Set.of();
+        }
+
+        try {
+            Set<UUID> conflicted = databaseManager.writeHistory(rows, pruneBelow);
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Wrote history versions for %d players, %d to retry",
+                    previousHeads.size() - conflicted.size(), conflicted.size()));
+            }
+            return conflicted;
+        } catch (SQLException e) {
+            // the cached heads were never stored, so the next delta must be encoded against the database again
+            for (Map.Entry<UUID, Head> previous : previousHeads.entrySet()) {
+                if (previous.getValue() != null) {
+                    heads.put(previous.getKey(), previous.getValue());
+                } else {
+                    heads.remove(previous.getKey());
+                }
+            }
+            plugin.getLogger().log(Level.WARNING, "Failed to write " + rows.size() + " history versions", e);
+            return Set.of();
+        }
+    }
+
+    /**
+     * The newest version saved at or before {@code atMillis}, or null if the history has none.
+     */
+    public CompletableFuture<Version> findVersion(UUID playerUuid, long atMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            flush();
+            try {
+                List<HistoryRow> chain = databaseManager.fetchHistoryChain(playerUuid, atMillis);
+                if (chain.isEmpty()) {
+                    return null;
+                }
+
+                HistoryRow last = chain.get(chain.size() - 1);
+                return new Version(last.getVersion(), last.getSavedAt(), new String(rebuild(chain), StandardCharsets.UTF_8));
+            } catch (SQLException | IOException e) {
+                throw new IllegalStateException("Failed to read the history of " + playerUuid, e);
+            }
+        });
+    }
+
+    private Head loadHead(UUID playerUuid) throws SQLException, IOException {
+        List<HistoryRow> chain = databaseManager.fetchHistoryChain(playerUuid, Long.MAX_VALUE);
+        if (chain.isEmpty()) {
+            return null;
+        }
+        return new Head(chain.get(chain.size() - 1).getVersion(), rebuild(chain));
+    }
+
+    private static byte[] rebuild(List<HistoryRow> chain) throws IOException {
+        byte[] data = gunzip(chain.get(0).getPayload());
+        for (int i = 1; i < chain.size(); i++) {
+            data = BinaryDelta.apply(data, chain.get(i).getPayload());
+        }
+        return data;
+    }
+
+    private static byte[] decode(String stored) throws IOException {
+        String yaml = UserDataCodec.isCompressed(stored) ? UserDataCodec.decompress(stored) : stored;
+        return yaml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    /**
+     * Stops the flush task and writes what is still queued. Must run before the database closes.
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+            flush();
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+}
@@ -0,0 +1,140 @@
+package dk.noxitech.essentialssql.manager;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.BalanceEntry;
+import dk.noxitech.essentialssql.database.DatabaseManager.WriteKind;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Keeps a precomputed balance top in memory for placeholders and {@code /esql baltop}.
+ * <p>
+ * The leaderboard is rebuilt off the main thread every
+ * {@code commands.balance-top.cache-duration} seconds and published by swapping a single
+ * volatile reference, so readers always see a complete snapshot without locking. Names,
+ * formatted balances and rank strings are built once per refresh; lookups are array or
+ * hash map reads that never allocate or wait on the database.
+ */
+public class LeaderboardManager {
+
+    private static final long EARLY_REFRESH_DELAY_TICKS = 100L;
+
+    private final Main plugin;
+    private final DatabaseManager databaseManager;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final AtomicBoolean earlyRefreshQueued = new AtomicBoolean();
+    private volatile BukkitTask refreshTask;
+
+    public LeaderboardManager(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+    }
+
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(List.of(), new String[0], new String[0], Map.of(), 0L);
+
+        private final List<BalanceEntry> entries;
+        private final String[] names;
+        private final String[] balances;
+        private final Map<UUID, String> ranks;
+        private final long createdAt;
+
+        private Snapshot(List<BalanceEntry> entries, String[] names, String[] balances, Map<UUID, String> ranks, long createdAt) {
+            this.entries = entries;
+            this.names = names;
+            this.balances = balances;
+            this.ranks = ranks;
+            this.createdAt = createdAt;
+        }
+
+        public List<BalanceEntry> getEntries() { return entries; }
+        public int size() { return names.length; }
+        public long getCreatedAt() { return createdAt; }
+
+        /**
+         * @param position 1-based position on the leaderboard
+         */
+        public String getName(int position) {
+            return position >= 1 && position <= names.length ? names[position - 1] : null;
+        }
+
+        public String getBalance(int position) {
+            return position >= 1 && position <= balances.length ? balances[position - 1] : null;
+        }
+
+        public String getRank(UUID uuid) {
+            return ranks.get(uuid);
+        }
+    }
+
+    public void start() {
+        if (!plugin.getSettings().isBalanceTopEnabled()) {
+            return;
+        }
+
+        long intervalTicks = Math.max(10, plugin.getConfig().getInt("commands.balance-top.cache-duration", 300)) * 20L;
+        refreshTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::refresh, 1L, intervalTicks);
+    }
+
+    /**
+     * Queries the balance top and swaps in the new snapshot. Runs on the calling thread.
+     */
+    public void refresh() {
+        int size = Math.max(1, plugin.getConfig().getInt("placeholders.leaderboard-size", 1000));
+
+        try {
+            List<BalanceEntry> entries = databaseManager.getTopBalances(size).join();
+            DecimalFormat format = new DecimalFormat("#,##0.00");
+
+            String[] names = new String[entries.size()];
+            String[] balances = new String[entries.size()];
+            Map<UUID, String> ranks = new HashMap<>(entries.size() * 2);
+            for (int i = 0; i < entries.size(); i++) {
+                BalanceEntry entry = entries.get(i);
+                names[i] = entry.getName();
+                balances[i] = format.format(entry.getBalance());
+                ranks.put(entry.getUuid(), String.valueOf(i + 1));
+            }
+
+            snapshot = new Snapshot(List.copyOf(entries), names, balances, ranks, System.currentTimeMillis());
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to refresh the balance leaderboard", e);
+        }
+    }
+
+    /**
+     * Rebuilds the leaderboard a few seconds early when another server changed the balance of
+     * a ranked player. Changes arriving in the meantime share the same rebuild.
+     */
+    public void invalidate(UUID playerUuid, WriteKind kind) {
+        if (refreshTask == null || kind == WriteKind.USER_DATA || snapshot.getRank(playerUuid) == null) {
+            return;
+        }
+
+        if (earlyRefreshQueued.compareAndSet(false, true)) {
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> {
+                earlyRefreshQueued.set(false);
+                refresh();
+            }, EARLY_REFRESH_DELAY_TICKS);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void shutdown() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package dk.noxitech.essentialssql.manager;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
+import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.database.DatabaseManager.MigrationProgress;
+import dk.noxitech.essentialssql.database.DatabaseManager.MigrationRow;
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import dk.noxitech.essentialssql.utils.UserDataSummary;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Rewrites existing {@code user_data} rows to {@link UserDataCodec#CURRENT_FORMAT_VERSION}
+ * in the background, one primary-key ordered chunk at a time.
+ * <p>
+ * Progress is stored in the {@code migrations} table after every chunk, so a restart
+ * resumes where it stopped. Rows are written with a compare-and-set on {@code data_version},
+ * which means a player saving while their row is being converted always wins. The delay
+ * between chunks doubles when a chunk takes longer than the target and halves when it is
+ * well under it, and no chunks run while the server has more players than configured.
+ */
+public class MigrationManager {
+
+    private final Main plugin;
+    private final DatabaseManager databaseManager;
+    private final String migrationName = "user_data_format_v" + UserDataCodec.CURRENT_FORMAT_VERSION;
+
+    private volatile boolean running;
+    private volatile MigrationProgress progress;
+    private volatile long delayTicks;
+    private volatile long failedRows;
+    private BukkitTask task;
+
+    public MigrationManager(Main plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        plugin.getMetricsRegistry().registerGauge("migration_rows_migrated",
+            "Rows rewritten by the running user_data migration",
+            () -> progress != null ? progress.getRowsMigrated() : 0);
+    }
+
+    public void start() {
+        FileConfiguration config = plugin.getConfig();
+        if (config.getBoolean("migration.enabled", true) && config.getBoolean("migration.auto-start", true)) {
+            begin();
+        }
+    }
+
+    /**
+     * @return false if the migration is already running
+     */
+    public synchronized boolean begin() {
+        if (running) {
+            return false;
+        }
+
+        running = true;
+        delayTicks = minDelay();
+        schedule(1L);
+        return true;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private synchronized void schedule(long delay) {
+        if (running) {
+            task = plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, this::runChunk, delay);
+        }
+    }
+
+    private void runChunk() {
+        if (!running) {
+            return;
+        }
+
+        FileConfiguration config = plugin.getConfig();
+        int maxPlayers = config.getInt("migration.max-online-players", 0);
+        if (maxPlayers > 0 && plugin.getServer().getOnlinePlayers().size() >= maxPlayers) {
+            schedule(maxDelay());
+            return;
+        }
+
+        try {
+            if (progress == null) {
+                progress = databaseManager.getMigrationProgress(migrationName);
+            }
+            if (progress.isCompleted()) {
+                stop();
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            int chunkSize = Math.max(1, config.getInt("migration.chunk-size", 500));
+            List<MigrationRow> rows = databaseManager.fetchMigrationChunk(progress.getLastId(),
+                UserDataCodec.CURRENT_FORMAT_VERSION, chunkSize);
+
+            if (rows.isEmpty()) {
+                databaseManager.applyMigrationChunk(progress, rows, progress.getLastId(), UserDataCodec.CURRENT_FORMAT_VERSION, true);
+                progress = new MigrationProgress(migrationName, progress.getLastId(), progress.getRowsMigrated(), true);
+                finish();
+                return;
+            }
+
+            List<MigrationRow> converted = convert(rows);
+            long lastId = rows.get(rows.size() - 1).getId();
+            int updated = databaseManager.applyMigrationChunk(progress, converted, lastId, UserDataCodec.CURRENT_FORMAT_VERSION, false);
+            progress = new MigrationProgress(migrationName, lastId, progress.getRowsMigrated() + updated, false);
+
+            adjustDelay(System.currentTimeMillis() - start);
+
+            if (plugin.getSettings().shouldLog(DebugCategory.DATABASE)) {
+                plugin.getLogger().info(String.format("Migration %s: rewrote %d/%d rows up to id %d, next chunk in %d ticks",
+                    migrationName, updated, rows.size(), lastId, delayTicks));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Migration " + migrationName + " chunk failed, retrying later", e);
+            delayTicks = maxDelay();
+        }
+
+        schedule(delayTicks);
+    }
+
+    private List<MigrationRow> convert(List<MigrationRow> rows) {
+        boolean compress = plugin.getSettings().isCompressData();
+        List<MigrationRow> converted = new ArrayList<>(rows.size());
+
+        for (MigrationRow row : rows) {
+            try {
+                String yaml = UserDataCodec.isCompressed(row.getData()) ? UserDataCodec.decompress(row.getData()) : row.getData();
+                String data = compress ? UserDataCodec.compress(yaml) : yaml;
+                converted.add(new MigrationRow(row.getId(), row.getUuid(), data, row.getDataVersion(), UserDataSummary.extract(yaml)));
+            } catch (IOException | IllegalArgumentException e) {
+                failedRows++;
+                plugin.getLogger().warning("Migration " + migrationName + " skipped unreadable data for " + row.getUuid() + ": " + e.getMessage());
+            }
+        }
+
+        return converted;
+    }
+
+    private void adjustDelay(long elapsedMillis) {
+        long target = Math.max(1, plugin.getConfig().getLong("migration.target-chunk-millis", 200));
+        if (elapsedMillis > target) {
+            delayTicks = Math.min(maxDelay(), delayTicks * 2);
+        } else if (elapsedMillis < target / 2) {
+            delayTicks = Math.max(minDelay(), delayTicks / 2);
+        }
+    }
+
+    private void finish() {
+        stop();
+        plugin.getLogger().info(String.format("Migration %s completed: %d rows rewritten%s", migrationName,
+            progress.getRowsMigrated(), failedRows > 0 ? ", " + failedRows + " unreadable rows skipped" : ""));
+    }
+
+    private long minDelay() {
+        return Math.max(1, plugin.getConfig().getLong("migration.min-delay-ticks", 1));
+    }
+
+    private long maxDelay() {
+        return Math.max(minDelay(), plugin.getConfig().getLong("migration.max-delay-ticks", 200));
+    }
+
+    public void shutdown() {
+        stop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public String getMigrationName() {
+        return migrationName;
+    }
+
+    public MigrationProgress getProgress() {
+        return progress;
+    }
+
+    public long getDelayTicks() {
+        return delayTicks;
+    }
+
+    public long getFailedRows() {
+        return failedRows;
+    }
+}
@@ -4,22 +4,32 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.config.PluginSettings;
+import dk.noxitech.essentialssql.config.PluginSettings.DebugCategory;
 import dk.noxitech.essentialssql.database.DatabaseManager;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry.Phase;
+import dk.noxitech.essentialssql.utils.UserDataCodec;
+import dk.noxitech.essentialssql.utils.UserDataFormat;
+import dk.noxitech.essentialssql.utils.UserDataSummary;
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.*;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class UserDataManager {
 
@@ -28,12 +38,19 @@ public class UserDataManager {
     private final Gson gson;
     private final Path essentialsDataPath;
     private final JsonParser jsonParser;
+    private final MetricsRegistry metrics;
+    private final AtomicInteger pendingLoads = new AtomicInteger();
+    private final AtomicInteger pendingSaves = new AtomicInteger();
 
     public UserDataManager(Main plugin, DatabaseManager databaseManager) {
         this.plugin = plugin;
         this.databaseManager = databaseManager;
         this.gson = new Gson();
         this.jsonParser = new JsonParser();
+        this.metrics = plugin.getMetricsRegistry();
+
+        metrics.registerGauge("pending_loads", "Player data loads in flight", pendingLoads::get);
+        metrics.registerGauge("pending_saves", "Player data saves in flight", pendingSaves::get);
 
         this.essentialsDataPath = Paths.get(plugin.getDataFolder().getParent(), "Essentials", "userdata");
 
@@ -45,9 +62,16 @@ public class UserDataManager {
     }
 
     public CompletableFuture<Boolean> loadPlayerData(UUID playerUuid, String playerName) {
-        return databaseManager.getUserData(playerUuid).thenCompose(data -> {
+        long start = metrics.start();
+        pendingLoads.incrementAndGet();
+
+        return databaseManager.getUserData(playerUuid).thenCompose(data -> data != null
+            ? CompletableFuture.completedFuture(data)
+            : databaseManager.restoreArchivedUserData(playerUuid)
+        ).thenCompose(data -> {
+            PluginSettings settings = plugin.getSettings();
             if (data == null) {
-                if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
+                if (settings.shouldLog(DebugCategory.FILE)) {
                     plugin.getLogger().info(String.format("No database data found for player %s (%s)", playerName, playerUuid));
                 }
                 return CompletableFuture.completedFuture(false);
@@ -56,43 +80,62 @@ public class UserDataManager {
             return CompletableFuture.supplyAsync(() -> {
                 try {
                     String userData = isDataCompressed(data) ? decompressData(data) : data;
+                    Path userFile = essentialsDataPath.resolve(UserDataFormat.fileNameFor(playerUuid));
 
-                    if (plugin.getConfig().getBoolean("data.filters.enabled", false)) {
-                        userData = filterUserData(userData);
+                    if (settings.isFiltersEnabled()) {
+                        userData = keepLocalSections(userFile, filterUserData(userData));
                     }
 
-                    Path userFile = essentialsDataPath.resolve(playerUuid.toString() + ".yml");
-                    Files.write(userFile, userData.getBytes());
+                    // write next to the target and rename, so Essentials never reads a half-written file
+                    Path tempFile = essentialsDataPath.resolve("." + userFile.getFileName() + ".tmp");
+                    long ioStart = metrics.start();
+                    Files.write(tempFile, userData.getBytes());
+                    Files.move(tempFile, userFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    metrics.record(Phase.FILE_IO, ioStart);
 
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
+                    if (settings.shouldLog(DebugCategory.FILE)) {
                         plugin.getLogger().info(String.format("Created userdata file for player %s (%s)", playerName, playerUuid));
                     }
 
                     return true;
                 } catch (Exception e) {
+                    metrics.recordFailure(Phase.LOAD);
                     plugin.getLogger().log(Level.SEVERE, 
                         String.format("Failed to load data for player %s (%s)", playerName, playerUuid), e);
                     return false;
                 }
             });
+        }).whenComplete((loaded, throwable) -> {
+            pendingLoads.decrementAndGet();
+            metrics.record(Phase.LOAD, start);
+            if (throwable != null) {
+                metrics.recordFailure(Phase.LOAD);
+            }
         });
     }
 
     public CompletableFuture<Boolean> savePlayerData(UUID playerUuid, String playerName) {
+        long start = metrics.start();
+        pendingSaves.incrementAndGet();
+
         return CompletableFuture.supplyAsync(() -> {
+            PluginSettings settings = plugin.getSettings();
+            boolean debug = settings.shouldLog(DebugCategory.FILE);
             try {
-                Path userFile = essentialsDataPath.resolve(playerUuid.toString() + ".yml");
+                Path userFile = essentialsDataPath.resolve(UserDataFormat.fileNameFor(playerUuid));
 
                 if (!Files.exists(userFile)) {
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
+                    if (debug) {
                         plugin.getLogger().info(String.format("No userdata file found for player %s (%s)", playerName, playerUuid));
                     }
                     return false;
                 }
 
+                long ioStart = metrics.start();
                 String userData = new String(Files.readAllBytes(userFile));
+                metrics.record(Phase.FILE_IO, ioStart);
 
-                if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
+                if (debug) {
                     plugin.getLogger().info(String.format("[DEBUG] Reading userdata for %s: %d bytes", playerName, userData.length()));
                     if (userData.length() > 0) {
                         plugin.getLogger().info(String.format("[DEBUG] First 200 chars of data for %s: %s", playerName,
@@ -100,18 +143,16 @@ public class UserDataManager {
                     }
                 }
 
-                if (plugin.getConfig().getBoolean("data.filters.enabled", false)) {
+                if (settings.isFiltersEnabled()) {
                     userData = filterUserData(userData);
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
+                    if (debug) {
                         plugin.getLogger().info(String.format("[DEBUG] Data filtered for %s", playerName));
                     }
-                } else {
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
-                        plugin.getLogger().info(String.format("[DEBUG] Filtering DISABLED - preserving ALL data for %s", playerName));
-                    }
+                } else if (debug) {
+                    plugin.getLogger().info(String.format("[DEBUG] Filtering DISABLED - preserving ALL data for %s", playerName));
                 }
 
-                int maxDataSize = plugin.getConfig().getInt("data.max-data-size", 0);
+                int maxDataSize = settings.getMaxDataSizeKb();
                 if (maxDataSize > 0 && userData.length() > maxDataSize * 1024) {
                     plugin.getLogger().warning(String.format(
                         "Data size for player %s exceeds limit (%d KB). Data will be truncated.", 
@@ -119,23 +160,23 @@ public class UserDataManager {
                     userData = userData.substring(0, maxDataSize * 1024);
                 }
 
-                if (plugin.getConfig().getBoolean("data.compress-data", true)) {
+                UserDataSummary summary = UserDataSummary.extract(userData);
+
+                if (settings.isCompressData()) {
                     int originalSize = userData.length();
                     userData = compressData(userData);
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
+                    if (debug) {
                         plugin.getLogger().info(String.format("[DEBUG] Data compressed for %s: %d -> %d bytes", playerName, originalSize, userData.length()));
                     }
-                } else {
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
-                        plugin.getLogger().info(String.format("[DEBUG] Compression disabled for %s: %d bytes", playerName, userData.length()));
-                    }
+                } else if (debug) {
+                    plugin.getLogger().info(String.format("[DEBUG] Compression disabled for %s: %d bytes", playerName, userData.length()));
                 }
 
-                if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
+                if (debug) {
                     plugin.getLogger().info(String.format("[DEBUG] Attempting to save %d bytes to database for player %s (%s)", userData.length(), playerName, playerUuid));
                 }
-                boolean result = databaseManager.saveUserData(playerUuid, playerName, userData).join();
-                if (plugin.getConfig().getBoolean("debug.log-file-operations", true) && plugin.getConfig().getBoolean("debug.enabled", true)) {
+                boolean result = databaseManager.saveUserData(playerUuid, playerName, userData, summary).join();
+                if (debug) {
                     plugin.getLogger().info(String.format("[DEBUG] Database save result for %s: %s", playerName, result));
                 }
                 return result;
@@ -146,7 +187,13 @@ public class UserDataManager {
                 return false;
             }
         }).thenCompose(saved -> {
-            if (saved && plugin.getConfig().getBoolean("settings.delete-local-after-save", true)) {
+            pendingSaves.decrementAndGet();
+            metrics.record(Phase.SAVE, start);
+            if (!saved) {
+                metrics.recordFailure(Phase.SAVE);
+            }
+
+            if (saved && plugin.getSettings().isDeleteLocalAfterSave()) {
                 return deleteLocalUserData(playerUuid, playerName);
             }
             return CompletableFuture.completedFuture(saved);
@@ -156,12 +203,12 @@ public class UserDataManager {
     public CompletableFuture<Boolean> deleteLocalUserData(UUID playerUuid, String playerName) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Path userFile = essentialsDataPath.resolve(playerUuid.toString() + ".yml");
+                Path userFile = essentialsDataPath.resolve(UserDataFormat.fileNameFor(playerUuid));
 
                 if (Files.exists(userFile)) {
                     Files.delete(userFile);
 
-                    if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
+                    if (plugin.getSettings().shouldLog(DebugCategory.FILE)) {
                         plugin.getLogger().info(String.format("Deleted local userdata file for player %s (%s)", 
                                                             playerName, playerUuid));
                     }
@@ -189,37 +236,39 @@ public class UserDataManager {
                     createBackup("import");
                 }
 
+                PluginSettings settings = plugin.getSettings();
                 Files.list(essentialsDataPath)
-                    .filter(path -> path.toString().endsWith(".yml"))
+                    .filter(path -> path.toString().endsWith(UserDataFormat.FILE_EXTENSION))
                     .forEach(path -> {
                         try {
-                            String fileName = path.getFileName().toString().replace(".yml", "");
-                            UUID playerUuid = UUID.fromString(fileName);
+                            UUID playerUuid = UserDataFormat.uuidFromFileName(path.getFileName().toString());
+
+                            String userData = new String(Files.readAllBytes(path));
+                            UserDataSummary fileSummary = UserDataSummary.extract(userData);
 
-                            String playerName = getPlayerNameFromFile(path);
+                            String playerName = fileSummary.getLastAccountName();
                             if (playerName == null) {
                                 playerName = "Unknown";
                             }
 
-                            String userData = new String(Files.readAllBytes(path));
-
-                            if (plugin.getConfig().getBoolean("data.filters.enabled", false)) {
+                            if (settings.isFiltersEnabled()) {
                                 userData = filterUserData(userData);
-                            } else {
-                                if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
-                                    plugin.getLogger().info(String.format("Importing ALL data for player %s (filtering disabled)", playerName));
-                                }
+                            } else if (settings.shouldLog(DebugCategory.FILE)) {
+                                plugin.getLogger().info(String.format("Importing ALL data for player %s (filtering disabled)", playerName));
                             }
 
-                            if (plugin.getConfig().getBoolean("data.compress-data", true)) {
+                            UserDataSummary summary = settings.isFiltersEnabled() ? UserDataSummary.extract(userData) : fileSummary;
+
+                            if (settings.isCompressData()) {
                                 userData = compressData(userData);
                             }
 
-                            databaseManager.saveUserData(playerUuid, playerName, userData).join();
+                            databaseManager.saveUserData(playerUuid, playerName, userData, summary).join();
 
-                            double balance = getPlayerBalanceFromFile(path);
-                            if (balance >= 0) {
-                                databaseManager.updateBalanceCache(playerUuid, playerName, balance);
+                            if (fileSummary.getMoney() != null) {
+                                databaseManager.updateBalanceCache(playerUuid, playerName, fileSummary.getMoney().doubleValue());
+                            } else if (settings.shouldLog(DebugCategory.FILE)) {
+                                plugin.getLogger().warning("No balance field found in file: " + path.getFileName());
                             }
 
                         } catch (Exception e) {
@@ -228,7 +277,7 @@ public class UserDataManager {
                     });
 
                 importedCount = (int) Files.list(essentialsDataPath)
-                    .filter(path -> path.toString().endsWith(".yml"))
+                    .filter(path -> path.toString().endsWith(UserDataFormat.FILE_EXTENSION))
                     .count();
 
             } catch (Exception e) {
@@ -257,7 +306,7 @@ public class UserDataManager {
                                 userData = decompressData(userData);
                             }
 
-                            Path userFile = essentialsDataPath.resolve(playerData.getUuid().toString() + ".yml");
+                            Path userFile = essentialsDataPath.resolve(UserDataFormat.fileNameFor(playerData.getUuid()));
                             Files.write(userFile, userData.getBytes());
 
                             exportedCount++;
@@ -302,32 +351,58 @@ public class UserDataManager {
         });
     }
 
-    public void updatePlayerBalance(UUID playerUuid, String playerName, double balance) {
-        if (plugin.getConfig().getBoolean("commands.balance-top.enabled", true)) {
-            databaseManager.updateBalanceCache(playerUuid, playerName, balance);
+    /**
+     * @return the offline balance changes added to the stored balance, see
+     *     {@link DatabaseManager#updateBalanceCache}
+     */
+    public CompletableFuture<BigDecimal> updatePlayerBalance(UUID playerUuid, String playerName, double balance) {
+        if (!plugin.getSettings().isBalanceTopEnabled()) {
+            return CompletableFuture.completedFuture(BigDecimal.ZERO);
         }
+        return databaseManager.updateBalanceCache(playerUuid, playerName, balance);
     }
 
-    private String filterUserData(String userData) {
-        try {
-            Map<String, Boolean> filters = new HashMap<>();
-            filters.put("homes", plugin.getConfig().getBoolean("data.filters.homes", true));
-            filters.put("money", plugin.getConfig().getBoolean("data.filters.money", true));
-            filters.put("mail", plugin.getConfig().getBoolean("data.filters.mail", true));
-            filters.put("kits", plugin.getConfig().getBoolean("data.filters.kits", true));
-            filters.put("cooldowns", plugin.getConfig().getBoolean("data.filters.cooldowns", true));
-            filters.put("warps", plugin.getConfig().getBoolean("data.filters.warps", true));
-            filters.put("jail", plugin.getConfig().getBoolean("data.filters.jail", true));
-            filters.put("mutes", plugin.getConfig().getBoolean("data.filters.mutes", true));
-            filters.put("social-spy", plugin.getConfig().getBoolean("data.filters.social-spy", true));
-            filters.put("god-mode", plugin.getConfig().getBoolean("data.filters.god-mode", true));
-            filters.put("fly", plugin.getConfig().getBoolean("data.filters.fly", true));
-            filters.put("nicknames", plugin.getConfig().getBoolean("data.filters.nicknames", true));
-            filters.put("ignore-list", plugin.getConfig().getBoolean("data.filters.ignore-list", true));
-            filters.put("teleport-requests", plugin.getConfig().getBoolean("data.filters.teleport-requests", true));
+    /**
+     * Copies the sections excluded from syncing (mail, homes, ...) from the existing local file
+     * into the loaded data. Excluded sections are never stored in the database, so replacing the
+     * file with the loaded data alone would delete this server's copy of them.
+     */
+    private String keepLocalSections(Path userFile, String loaded) throws InvalidConfigurationException {
+        List<String> excluded = plugin.getSettings().getUserDataFilter().getExcludedPaths();
+        if (excluded.isEmpty() || !Files.exists(userFile)) {
+            return loaded;
+        }
 
-            return userData;
+        YamlConfiguration local = YamlConfiguration.loadConfiguration(userFile.toFile());
+        YamlConfiguration merged = new YamlConfiguration();
+        merged.loadFromString(loaded);
 
+        for (String path : excluded) {
+            if (!local.contains(path)) {
+                continue;
+            }
+            if (local.isConfigurationSection(path)) {
+                copySection(local.getConfigurationSection(path), merged.createSection(path));
+            } else {
+                merged.set(path, local.get(path));
+            }
+        }
+        return merged.saveToString();
+    }
+
+    private static void copySection(ConfigurationSection from, ConfigurationSection to) {
+        for (String key : from.getKeys(false)) {
+            if (from.isConfigurationSection(key)) {
+                copySection(from.getConfigurationSection(key), to.createSection(key));
+            } else {
+                to.set(key, from.get(key));
+            }
+        }
+    }
+
+    private String filterUserData(String userData) {
+        try {
+            return plugin.getSettings().getUserDataFilter().apply(userData);
         } catch (Exception e) {
             plugin.getLogger().warning("Failed to filter user data: " + e.getMessage());
             return userData;
@@ -335,15 +410,15 @@ public class UserDataManager {
     }
 
     private String compressData(String data) {
+        long start = metrics.start();
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (GZIPOutputStream gzipOut = new GZIPOutputStream(baos)) {
-                gzipOut.write(data.getBytes());
-            }
-            return "GZIP:" + java.util.Base64.getEncoder().encodeToString(baos.toByteArray());
+            return UserDataCodec.compress(data);
         } catch (Exception e) {
+            metrics.recordFailure(Phase.COMPRESS);
             plugin.getLogger().warning("Failed to compress data: " + e.getMessage());
             return data;
+        } finally {
+            metrics.record(Phase.COMPRESS, start);
         }
     }
 
@@ -355,96 +430,20 @@ public class UserDataManager {
     }
 
     private String decompressData(String compressedData) {
+        long start = metrics.start();
         try {
-            String base64Data = compressedData.substring(5);
-            byte[] compressedBytes = java.util.Base64.getDecoder().decode(base64Data);
-
-            ByteArrayInputStream bais = new ByteArrayInputStream(compressedBytes);
-            try (GZIPInputStream gzipIn = new GZIPInputStream(bais);
-                 ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-
-                byte[] buffer = new byte[1024];
-                int len;
-                while ((len = gzipIn.read(buffer)) != -1) {
-                    baos.write(buffer, 0, len);
-                }
-
-                return baos.toString();
-            }
+            return UserDataCodec.decompress(compressedData);
         } catch (Exception e) {
+            metrics.recordFailure(Phase.DECOMPRESS);
             plugin.getLogger().warning("Failed to decompress data: " + e.getMessage());
             return compressedData;
+        } finally {
+            metrics.record(Phase.DECOMPRESS, start);
         }
     }
 
     private boolean isDataCompressed(String data) {
-        return data != null && data.startsWith("GZIP:");
-    }
-
-    private String getPlayerNameFromFile(Path filePath) {
-        try {
-            String content = new String(Files.readAllBytes(filePath));
-            String[] lines = content.split("\n");
-            for (String line : lines) {
-                if (line.trim().startsWith("lastAccountName:")) {
-                    return line.split(":")[1].trim().replace("\"", "").replace("'", "");
-                }
-            }
-        } catch (Exception ignored) {}
-        return null;
-    }
-
-
-    private double getPlayerBalanceFromFile(Path filePath) {
-        try {
-            String content = new String(Files.readAllBytes(filePath));
-            String[] lines = content.split("\n");
-
-            for (String line : lines) {
-                String trimmedLine = line.trim();
-
-                if (trimmedLine.startsWith("money:")) {
-                    String balanceStr = trimmedLine.substring(6).trim();
-
-                    balanceStr = balanceStr.replace("'", "").replace("\"", "");
-
-                    if (!balanceStr.isEmpty()) {
-                        double balance = Double.parseDouble(balanceStr);
-
-                        if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
-                            plugin.getLogger().info("Extracted balance " + balance + " from file: " + filePath.getFileName());
-                        }
-
-                        return balance;
-                    }
-                }
-
-                if (trimmedLine.startsWith("balance:")) {
-                    String balanceStr = trimmedLine.substring(8).trim();
-                    balanceStr = balanceStr.replace("'", "").replace("\"", "");
-
-                    if (!balanceStr.isEmpty()) {
-                        double balance = Double.parseDouble(balanceStr);
-
-                        if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
-                            plugin.getLogger().info("Extracted balance " + balance + " from file: " + filePath.getFileName());
-                        }
-
-                        return balance;
-                    }
-                }
-            }
-
-            if (plugin.getConfig().getBoolean("debug.log-file-operations", false)) {
-                plugin.getLogger().warning("No balance field found in file: " + filePath.getFileName());
-            }
-        } catch (NumberFormatException e) {
-            plugin.getLogger().warning("Invalid balance format in file: " + filePath.getFileName() + " - " + e.getMessage());
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to extract balance from file: " + filePath.getFileName() + " - " + e.getMessage());
-        }
-
-        return -1;
+        return UserDataCodec.isCompressed(data);
     }
 
     private void createBackup(String operation) {
@@ -452,13 +451,13 @@ public class UserDataManager {
     }
 
     public void startAutoSync() {
-        int syncInterval = plugin.getConfig().getInt("settings.auto-sync-interval", 0);
+        int syncInterval = plugin.getSettings().getAutoSyncInterval();
         if (syncInterval > 0) {
             new BukkitRunnable() {
                 @Override
                 public void run() {
                     for (Player player : Bukkit.getOnlinePlayers()) {
-                        if (plugin.getConfig().getBoolean("settings.async-operations", true)) {
+                        if (plugin.getSettings().isAsyncOperations()) {
                             savePlayerData(player.getUniqueId(), player.getName());
                         }
                     }
@@ -0,0 +1,170 @@
+package dk.noxitech.essentialssql.metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects operation latencies, failure counters and gauges for the plugin.
+ * When performance monitoring is disabled {@link #start()} returns 0 and
+ * {@link #record(Phase, long)} becomes a no-op, so instrumented code pays
+ * only for a volatile read.
+ */
+public class MetricsRegistry {
+
+    public enum Phase {
+        LOAD("load"),
+        SAVE("save"),
+        COMPRESS("compress"),
+        DECOMPRESS("decompress"),
+        FILE_IO("file_io"),
+        QUERY("query"),
+        POOL_WAIT("pool_wait"),
+        MAIN_THREAD("main_thread");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> failures = new EnumMap<>(Phase.class);
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    private volatile boolean enabled;
+
+    public MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+            failures.put(phase, new LongAdder());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void record(Phase phase, long startNanos) {
+        if (startNanos != 0L) {
+            histograms.get(phase).record((System.nanoTime() - startNanos) / 1000L);
+        }
+    }
+
+    public void recordFailure(Phase phase) {
+        if (enabled) {
+            failures.get(phase).increment();
+        }
+    }
+
+    public void registerGauge(String name, String help, LongSupplier supplier) {
+        gauges.put(name, new Gauge(help, supplier));
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    public List<String> formatStatusLines() {
+        List<String> lines = new ArrayList<>();
+
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+
+            lines.add(String.format(Locale.ROOT, "&7%s: &f%d ops &7p50 &f%.2fms &7p99 &f%.2fms &7max &f%.2fms &7failed &f%d",
+                phase.getLabel(), count,
+                histogram.getPercentileMicros(0.5) / 1000.0,
+                histogram.getPercentileMicros(0.99) / 1000.0,
+                histogram.getMaxMicros() / 1000.0,
+                failures.get(phase).sum()));
+        }
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            lines.add("&7" + entry.getKey() + ": &f" + entry.getValue().read());
+        }
+
+        return lines;
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(2048);
+
+        out.append("# HELP essentialssql_operation_duration_seconds Latency of EssentialsSQL operations by phase\n");
+        out.append("# TYPE essentialssql_operation_duration_seconds summary\n");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            for (double quantile : QUANTILES) {
+                out.append("essentialssql_operation_duration_seconds{phase=\"").append(phase.getLabel())
+                    .append("\",quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentileMicros(quantile) / 1_000_000.0).append('\n');
+            }
+            out.append("essentialssql_operation_duration_seconds_sum{phase=\"").append(phase.getLabel()).append("\"} ")
+                .append(histogram.getSumMicros() / 1_000_000.0).append('\n');
+            out.append("essentialssql_operation_duration_seconds_count{phase=\"").append(phase.getLabel()).append("\"} ")
+                .append(histogram.getCount()).append('\n');
+        }
+
+        out.append("# HELP essentialssql_operation_failures_total Failed EssentialsSQL operations by phase\n");
+        out.append("# TYPE essentialssql_operation_failures_total counter\n");
+        for (Phase phase : Phase.values()) {
+            out.append("essentialssql_operation_failures_total{phase=\"").append(phase.getLabel()).append("\"} ")
+                .append(failures.get(phase).sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            String metricName = "essentialssql_" + entry.getKey();
+            out.append("# HELP ").append(metricName).append(' ').append(entry.getValue().help).append('\n');
+            out.append("# TYPE ").append(metricName).append(" gauge\n");
+            out.append(metricName).append(' ').append(entry.getValue().read()).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    private static final class Gauge {
+        private final String help;
+        private final LongSupplier supplier;
+
+        private Gauge(String help, LongSupplier supplier) {
+            this.help = help;
+            this.supplier = supplier;
+        }
+
+        private long read() {
+            try {
+                return supplier.getAsLong();
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+    }
+}
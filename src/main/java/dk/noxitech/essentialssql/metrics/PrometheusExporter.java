@@ -0,0 +1,73 @@
+package dk.noxitech.essentialssql.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import dk.noxitech.essentialssql.Main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Minimal embedded HTTP listener serving {@link MetricsRegistry} in the
+ * Prometheus text exposition format on {@code /metrics}.
+ */
+public class PrometheusExporter {
+
+    private final Main plugin;
+    private final MetricsRegistry metrics;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PrometheusExporter(Main plugin, MetricsRegistry metrics) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+    }
+
+    public boolean start(String bindAddress, int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+            server.createContext("/metrics", exchange -> {
+                try {
+                    byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            });
+
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "EssentialsSQL-Metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            server.start();
+
+            plugin.getLogger().info(String.format("Prometheus metrics available on http://%s:%d/metrics", bindAddress, port));
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to start Prometheus metrics endpoint", e);
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package dk.noxitech.essentialssql.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy/insert delta between two byte arrays, used to store userdata history versions
+ * as the difference to the version before.
+ * <p>
+ * The base is indexed in fixed blocks; the target is scanned for positions whose next
+ * block matches one of them, and every match is extended in both directions. Matches
+ * become copy instructions, everything in between is inserted literally. Userdata files
+ * change a few lines at a time, so deltas are usually a small fraction of the file.
+ * <p>
+ * Layout: varint target length, then instructions - {@code 0, offset, length} copies from
+ * the base, {@code 1, length, bytes} inserts. Kept free of Bukkit types like {@link UserDataCodec}.
+ */
+public final class BinaryDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+
+    private BinaryDelta() {
+    }
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, target.length / 8));
+        writeVarInt(out, target.length);
+
+        Map<Integer, Integer> blocks = new HashMap<>(base.length / BLOCK_SIZE * 2 + 1);
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            blocks.putIfAbsent(hash(base, offset), offset);
+        }
+
+        int literalStart = 0;
+        int position = 0;
+        while (position + BLOCK_SIZE <= target.length) {
+            Integer candidate = blocks.get(hash(target, position));
+            if (candidate == null || !matches(base, candidate, target, position, BLOCK_SIZE)) {
+                position++;
+                continue;
+            }
+
+            int baseOffset = candidate;
+            while (baseOffset > 0 && position > literalStart && base[baseOffset - 1] == target[position - 1]) {
+                baseOffset--;
+                position--;
+            }
+
+            int length = 0;
+            while (baseOffset + length < base.length && position + length < target.length
+                && base[baseOffset + length] == target[position + length]) {
+                length++;
+            }
+
+            writeInsert(out, target, literalStart, position);
+            out.write(OP_COPY);
+            writeVarInt(out, baseOffset);
+            writeVarInt(out, length);
+
+            position += length;
+            literalStart = position;
+        }
+
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the target from the base the delta was encoded against.
+     *
+     * @throws IllegalArgumentException if the delta is corrupt or belongs to a different base
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] cursor = {0};
+        int length = readVarInt(delta, cursor);
+        byte[] target = new byte[length];
+        int written = 0;
+
+        while (cursor[0] < delta.length) {
+            int op = delta[cursor[0]++];
+            if (op == OP_COPY) {
+                int offset = readVarInt(delta, cursor);
+                int count = readVarInt(delta, cursor);
+                if (offset < 0 || count < 0 || offset + count > base.length || written + count > length) {
+                    throw new IllegalArgumentException("Delta copies outside of the base");
+                }
+                System.arraycopy(base, offset, target, written, count);
+                written += count;
+            } else if (op == OP_INSERT) {
+                int count = readVarInt(delta, cursor);
+                if (count < 0 || cursor[0] + count > delta.length || written + count > length) {
+                    throw new IllegalArgumentException("Delta inserts past its end");
+                }
+                System.arraycopy(delta, cursor[0], target, written, count);
+                cursor[0] += count;
+                written += count;
+            } else {
+                throw new IllegalArgumentException("Unknown delta instruction " + op);
+            }
+        }
+
+        if (written != length) {
+            throw new IllegalArgumentException("Delta produced " + written + " of " + length + " bytes");
+        }
+        return target;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(OP_INSERT);
+            writeVarInt(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 1;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (cursor[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated delta");
+            }
+            byte b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in delta");
+    }
+}
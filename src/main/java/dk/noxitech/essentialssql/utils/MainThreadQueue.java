@@ -0,0 +1,105 @@
+package dk.noxitech.essentialssql.utils;
+
+import dk.noxitech.essentialssql.Main;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry;
+import dk.noxitech.essentialssql.metrics.MetricsRegistry.Phase;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Single handoff point for work that has to run on the main thread (Vault, Bukkit API,
+ * messages). Tasks run in submission order once per tick until the per-tick budget from
+ * {@code settings.main-thread-budget-ms} is used up; whatever is left carries over to the
+ * next tick, so a join storm is spread out instead of landing in one tick.
+ * <p>
+ * Implements {@link Executor} so async results can be handed over with
+ * {@code thenAcceptAsync(..., queue)}. Time spent per tick is recorded as the
+ * {@code main_thread} phase.
+ */
+public class MainThreadQueue implements Executor {
+
+    private final Main plugin;
+    private final MetricsRegistry metrics;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile long lastTickMicros;
+    private BukkitTask drainTask;
+
+    public MainThreadQueue(Main plugin) {
+        this.plugin = plugin;
+        this.metrics = plugin.getMetricsRegistry();
+
+        metrics.registerGauge("main_thread_queue_depth", "Tasks waiting for main thread time", pending::get);
+        metrics.registerGauge("main_thread_last_tick_micros", "Main thread time used by EssentialsSQL in the last tick that had work",
+            () -> lastTickMicros);
+    }
+
+    public void start() {
+        drainTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Runs queued tasks until the budget is spent. At least one task runs every tick,
+     * so a single slow task cannot stall the queue.
+     */
+    private void drain() {
+        if (pending.get() == 0) {
+            return;
+        }
+
+        long metricsStart = metrics.start();
+        long start = System.nanoTime();
+        long deadline = start + plugin.getSettings().getMainThreadBudgetNanos();
+
+        do {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                break;
+            }
+            pending.decrementAndGet();
+            runSafely(task);
+        } while (System.nanoTime() < deadline);
+
+        lastTickMicros = (System.nanoTime() - start) / 1000L;
+        metrics.record(Phase.MAIN_THREAD, metricsStart);
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.SEVERE, "Main thread task failed", t);
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the tick task and runs everything still queued. Called from onDisable on the main thread.
+     */
+    public void shutdown() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            pending.decrementAndGet();
+            runSafely(task);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dk.noxitech.essentialssql.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes userdata for storage in the {@code data} column.
+ * Kept free of Bukkit types so it can be exercised by the benchmark module.
+ */
+public final class UserDataCodec {
+
+    public static final String GZIP_PREFIX = "GZIP:";
+
+    /**
+     * Version of the row format written by the save path, stored in {@code format_version}.
+     * Bump it whenever the encoding or the extracted columns change; older rows are then
+     * rewritten in the background by the migration engine.
+     */
+    public static final int CURRENT_FORMAT_VERSION = 1;
+
+    private UserDataCodec() {
+    }
+
+    public static String compress(String data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(baos)) {
+            gzipOut.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+        return GZIP_PREFIX + Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+
+    public static String decompress(String compressedData) throws IOException {
+        String base64Data = compressedData.substring(GZIP_PREFIX.length());
+        byte[] compressedBytes = Base64.getDecoder().decode(base64Data);
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(compressedBytes);
+        try (GZIPInputStream gzipIn = new GZIPInputStream(bais);
+             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = gzipIn.read(buffer)) != -1) {
+                baos.write(buffer, 0, len);
+            }
+
+            return baos.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gzips userdata at the highest compression level, for the archive table where rows are
+     * written once and rarely read back.
+     */
+    public static byte[] compressArchive(String data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(baos) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzipOut.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+        return baos.toByteArray();
+    }
+
+    public static String decompressArchive(byte[] archived) throws IOException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(archived))) {
+            return new String(gzipIn.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Lowercase hex SHA-256 of the stored form, used as the key in {@code user_data_blobs}.
+     */
+    public static String sha256(String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(data.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static boolean isCompressed(String data) {
+        return data != null && data.startsWith(GZIP_PREFIX);
+    }
+}
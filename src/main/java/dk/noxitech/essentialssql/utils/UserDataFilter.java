@@ -0,0 +1,174 @@
+package dk.noxitech.essentialssql.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies the {@code data.filters} section to raw userdata.
+ * <p>
+ * The filter is compiled once from the config flags into the set of YAML
+ * sections to drop, then applied in a single pass over the text. It tracks
+ * indentation to find where a section ends, and never parses the YAML into
+ * objects. Only top-level sections and their direct children can be excluded,
+ * which covers every section Essentials writes for the supported filters.
+ */
+public final class UserDataFilter {
+
+    private static final Map<String, List<String>> SECTIONS = Map.ofEntries(
+        Map.entry("homes", List.of("homes")),
+        Map.entry("money", List.of("money")),
+        Map.entry("mail", List.of("mail")),
+        Map.entry("kits", List.of("timestamps.kits")),
+        Map.entry("cooldowns", List.of("timestamps.command-cooldowns")),
+        Map.entry("jail", List.of("jail", "jailed", "timestamps.jail", "timestamps.onlinejail")),
+        Map.entry("mutes", List.of("muted", "mute-reason", "timestamps.mute")),
+        Map.entry("social-spy", List.of("socialspy", "social-spy")),
+        Map.entry("god-mode", List.of("godmode", "god-mode")),
+        Map.entry("nicknames", List.of("nickname")),
+        Map.entry("ignore-list", List.of("ignore", "ignored-players")),
+        Map.entry("teleport-requests", List.of("teleportenabled", "teleport-enabled"))
+        // warps and fly have no per-player section in Essentials userdata
+    );
+
+    private final Map<String, Boolean> filters;
+    private final List<String> excludedPaths = new ArrayList<>();
+    private final Set<String> excludedTopLevel = new HashSet<>();
+    private final Map<String, Set<String>> excludedChildren = new HashMap<>();
+
+    public UserDataFilter(Map<String, Boolean> filters) {
+        this.filters = filters;
+
+        for (Map.Entry<String, Boolean> filter : filters.entrySet()) {
+            if (filter.getValue()) {
+                continue;
+            }
+
+            for (String path : SECTIONS.getOrDefault(filter.getKey(), List.of())) {
+                excludedPaths.add(path);
+                int dot = path.indexOf('.');
+                if (dot < 0) {
+                    excludedTopLevel.add(path);
+                } else {
+                    excludedChildren.computeIfAbsent(path.substring(0, dot), parent -> new HashSet<>())
+                        .add(path.substring(dot + 1));
+                }
+            }
+        }
+    }
+
+    public boolean isPassThrough() {
+        return excludedTopLevel.isEmpty() && excludedChildren.isEmpty();
+    }
+
+    public String apply(String userData) {
+        if (userData == null || isPassThrough()) {
+            return userData;
+        }
+
+        StringBuilder out = new StringBuilder(userData.length());
+        int length = userData.length();
+
+        String parentKey = null;
+        int parentIndent = -1;
+        int childIndent = -1;
+        int skipIndent = -1;
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int newline = userData.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? length : newline + 1;
+            int contentEnd = newline < 0 ? length : newline;
+            if (contentEnd > lineStart && userData.charAt(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+
+            int indent = lineStart;
+            while (indent < contentEnd && userData.charAt(indent) == ' ') {
+                indent++;
+            }
+            int column = indent - lineStart;
+            boolean blank = indent >= contentEnd || userData.charAt(indent) == '#';
+
+            if (skipIndent >= 0) {
+                if (blank || column > skipIndent || (column == skipIndent && userData.charAt(indent) == '-')) {
+                    lineStart = lineEnd;
+                    continue;
+                }
+                skipIndent = -1;
+            }
+
+            if (!blank && userData.charAt(indent) != '-') {
+                if (parentKey != null && column <= parentIndent) {
+                    parentKey = null;
+                    childIndent = -1;
+                }
+                if (childIndent >= 0 && column < childIndent) {
+                    childIndent = -1;
+                }
+
+                String key = null;
+                if (parentKey == null) {
+                    key = readKey(userData, indent, contentEnd);
+                    if (key != null && excludedTopLevel.contains(key)) {
+                        skipIndent = column;
+                        lineStart = lineEnd;
+                        continue;
+                    }
+                    if (key != null) {
+                        parentKey = key;
+                        parentIndent = column;
+                    }
+                } else if (childIndent < 0 || column == childIndent) {
+                    childIndent = column;
+                    Set<String> children = excludedChildren.get(parentKey);
+                    if (children != null) {
+                        key = readKey(userData, indent, contentEnd);
+                        if (key != null && children.contains(key)) {
+                            skipIndent = column;
+                            lineStart = lineEnd;
+                            continue;
+                        }
+                    }
+                }
+            }
+
+            out.append(userData, lineStart, lineEnd);
+            lineStart = lineEnd;
+        }
+
+        return out.toString();
+    }
+
+    private static String readKey(String text, int start, int end) {
+        char first = text.charAt(start);
+        if (first == '\'' || first == '"') {
+            int close = text.indexOf(first, start + 1);
+            if (close < 0 || close + 1 >= end || text.charAt(close + 1) != ':') {
+                return null;
+            }
+            return text.substring(start + 1, close);
+        }
+
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ':' && (i + 1 == end || text.charAt(i + 1) == ' ')) {
+                return text.substring(start, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Dotted paths of every excluded section, such as {@code timestamps.kits}.
+     */
+    public List<String> getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    public Map<String, Boolean> getFilters() {
+        return filters;
+    }
+}
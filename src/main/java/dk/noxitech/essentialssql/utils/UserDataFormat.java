@@ -0,0 +1,22 @@
+package dk.noxitech.essentialssql.utils;
+
+import java.util.UUID;
+
+/**
+ * Helpers for the Essentials userdata file layout.
+ */
+public final class UserDataFormat {
+
+    public static final String FILE_EXTENSION = ".yml";
+
+    private UserDataFormat() {
+    }
+
+    public static String fileNameFor(UUID playerUuid) {
+        return playerUuid.toString() + FILE_EXTENSION;
+    }
+
+    public static UUID uuidFromFileName(String fileName) {
+        return UUID.fromString(fileName.replace(FILE_EXTENSION, ""));
+    }
+}
@@ -0,0 +1,144 @@
+package dk.noxitech.essentialssql.utils;
+
+import java.math.BigDecimal;
+
+/**
+ * The handful of userdata fields stored in their own indexed columns, so
+ * offline lookups don't have to decompress and scan the full payload.
+ * Extracted in a single pass over the YAML text at save time.
+ */
+public final class UserDataSummary {
+
+    public static final int MAX_NAME_LENGTH = 16;
+    public static final int MAX_NICKNAME_LENGTH = 64;
+
+    private static final UserDataSummary EMPTY = new UserDataSummary(null, null, null, null, false);
+
+    private final String lastAccountName;
+    private final BigDecimal money;
+    private final String nickname;
+    private final Long logoutTime;
+    private final boolean jailed;
+
+    public UserDataSummary(String lastAccountName, BigDecimal money, String nickname, Long logoutTime, boolean jailed) {
+        this.lastAccountName = lastAccountName;
+        this.money = money;
+        this.nickname = nickname;
+        this.logoutTime = logoutTime;
+        this.jailed = jailed;
+    }
+
+    public static UserDataSummary empty() {
+        return EMPTY;
+    }
+
+    public static UserDataSummary extract(String userData) {
+        if (userData == null || userData.isEmpty()) {
+            return EMPTY;
+        }
+
+        String lastAccountName = null;
+        BigDecimal money = null;
+        String nickname = null;
+        Long logoutTime = null;
+        boolean jailed = false;
+        boolean inTimestamps = false;
+
+        int length = userData.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int newline = userData.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? length : newline;
+            int contentEnd = lineEnd > lineStart && userData.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+            int indent = lineStart;
+            while (indent < contentEnd && userData.charAt(indent) == ' ') {
+                indent++;
+            }
+
+            if (indent < contentEnd && userData.charAt(indent) != '#' && userData.charAt(indent) != '-') {
+                int colon = userData.indexOf(':', indent);
+                if (colon > indent && colon < contentEnd) {
+                    String value = scalar(userData, colon + 1, contentEnd);
+
+                    if (indent == lineStart) {
+                        inTimestamps = false;
+                        switch (userData.substring(indent, colon)) {
+                            case "lastAccountName", "last-account-name" -> lastAccountName = truncate(value, MAX_NAME_LENGTH);
+                            case "money", "balance" -> {
+                                if (money == null) {
+                                    money = parseDecimal(value);
+                                }
+                            }
+                            case "nickname" -> nickname = truncate(value, MAX_NICKNAME_LENGTH);
+                            case "jailed" -> jailed = "true".equalsIgnoreCase(value);
+                            case "timestamps" -> inTimestamps = true;
+                            default -> {
+                            }
+                        }
+                    } else if (inTimestamps && userData.startsWith("logout:", indent)) {
+                        logoutTime = parseLong(value);
+                    }
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return new UserDataSummary(lastAccountName, money, nickname, logoutTime, jailed);
+    }
+
+    private static String scalar(String text, int start, int end) {
+        int from = start;
+        while (from < end && text.charAt(from) == ' ') {
+            from++;
+        }
+        int to = end;
+        while (to > from && text.charAt(to - 1) == ' ') {
+            to--;
+        }
+        if (to - from >= 2) {
+            char first = text.charAt(from);
+            if ((first == '\'' || first == '"') && text.charAt(to - 1) == first) {
+                from++;
+                to--;
+            }
+        }
+        return from < to ? text.substring(from, to) : null;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private static BigDecimal parseDecimal(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getLastAccountName() { return lastAccountName; }
+    public BigDecimal getMoney() { return money; }
+    public String getNickname() { return nickname; }
+    public Long getLogoutTime() { return logoutTime; }
+    public boolean isJailed() { return jailed; }
+}
@@ -0,0 +1,120 @@
+package dk.noxitech.essentialssql.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDeltaTest {
+
+    private static final String USERDATA = """
+        money: '1520.50'
+        last-account-name: Notch
+        timestamps:
+          login: 1718000000000
+          logout: 1718003600000
+        homes:
+          base:
+            world: world
+            x: 120.5
+            y: 64.0
+            z: -340.25
+          farm:
+            world: world
+            x: 900.0
+            y: 70.0
+            z: 15.0
+        ignore: []
+        """;
+
+    private static void assertRoundTrip(byte[] base, byte[] target) {
+        byte[] delta = BinaryDelta.encode(base, target);
+        assertArrayEquals(target, BinaryDelta.apply(base, delta));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void identicalDataIsOneCopy() {
+        byte[] data = bytes(USERDATA);
+        byte[] delta = BinaryDelta.encode(data, data);
+
+        assertArrayEquals(data, BinaryDelta.apply(data, delta));
+        assertTrue(delta.length < 16, "delta of identical data was " + delta.length + " bytes");
+    }
+
+    @Test
+    void smallEditIsSmallDelta() {
+        byte[] base = bytes(USERDATA);
+        byte[] target = bytes(USERDATA.replace("money: '1520.50'", "money: '1490.00'").replace("x: 900.0", "x: 901.5"));
+        byte[] delta = BinaryDelta.encode(base, target);
+
+        assertArrayEquals(target, BinaryDelta.apply(base, delta));
+        assertTrue(delta.length < target.length / 4, "delta was " + delta.length + " of " + target.length + " bytes");
+    }
+
+    @Test
+    void insertsAndRemovalsAtEitherEnd() {
+        assertRoundTrip(bytes(USERDATA), bytes("# header\n" + USERDATA + "jailed: true\n"));
+        assertRoundTrip(bytes(USERDATA), bytes(USERDATA.substring(40, USERDATA.length() - 20)));
+    }
+
+    @Test
+    void emptyAndShortInputs() {
+        assertRoundTrip(new byte[0], new byte[0]);
+        assertRoundTrip(new byte[0], bytes(USERDATA));
+        assertRoundTrip(bytes(USERDATA), new byte[0]);
+        assertRoundTrip(bytes("short"), bytes("shorter"));
+    }
+
+    @Test
+    void repeatedBlocks() {
+        byte[] base = new byte[4096];
+        Arrays.fill(base, (byte) 'a');
+        byte[] target = Arrays.copyOf(base, 5000);
+        target[2048] = 'b';
+
+        assertRoundTrip(base, target);
+    }
+
+    @Test
+    void randomMutations() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            byte[] base = new byte[random.nextInt(3000)];
+            random.nextBytes(base);
+
+            byte[] target = base.clone();
+            for (int edit = random.nextInt(5); edit > 0 && target.length > 0; edit--) {
+                int at = random.nextInt(target.length);
+                int cut = Math.min(target.length - at, random.nextInt(64));
+                byte[] inserted = new byte[random.nextInt(64)];
+                random.nextBytes(inserted);
+
+                byte[] next = new byte[target.length - cut + inserted.length];
+                System.arraycopy(target, 0, next, 0, at);
+                System.arraycopy(inserted, 0, next, at, inserted.length);
+                System.arraycopy(target, at + cut, next, at + inserted.length, target.length - at - cut);
+                target = next;
+            }
+
+            assertRoundTrip(base, target);
+        }
+    }
+
+    @Test
+    void rejectsDeltaForAnotherBase() {
+        byte[] base = bytes(USERDATA);
+        byte[] delta = BinaryDelta.encode(base, bytes(USERDATA + "nickname: Steve\n"));
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryDelta.apply(Arrays.copyOf(base, 10), delta));
+        assertThrows(IllegalArgumentException.class, () -> BinaryDelta.apply(base, Arrays.copyOf(delta, delta.length - 3)));
+    }
+}